@@ -0,0 +1,64 @@
+package org.oss.jstub;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.oss.jstub.pojo.FullPojo;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Compares the ways {@link AccessorFactory} can call the setters of a bean;
+ * {@code REFLECTION} is the {@link Method#invoke} path StubFactory used before
+ * accessors were introduced.
+ *
+ * @author nicu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccessorBenchmark {
+    @Param({"REFLECTION", "METHOD_HANDLE", "LAMBDA_METAFACTORY"})
+    private String accessorFactory;
+
+    private BiConsumer<Object, Object> intSetter;
+    private BiConsumer<Object, Object> stringSetter;
+    private FullPojo pojo;
+    private Integer intValue;
+    private String stringValue;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        AccessorFactory accessorFactory = AccessorFactory.valueOf(this.accessorFactory);
+        intSetter = accessorFactory.setter(FullPojo.class.getMethod("setAnInt", int.class));
+        stringSetter = accessorFactory.setter(FullPojo.class.getMethod("setString", String.class));
+        pojo = new FullPojo();
+        intValue = 42;
+        stringValue = "value";
+    }
+
+    @Benchmark
+    public FullPojo setInt() {
+        intSetter.accept(pojo, intValue);
+        return pojo;
+    }
+
+    @Benchmark
+    public FullPojo setString() {
+        stringSetter.accept(pojo, stringValue);
+        return pojo;
+    }
+}
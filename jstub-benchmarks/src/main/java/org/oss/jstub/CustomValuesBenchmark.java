@@ -0,0 +1,61 @@
+package org.oss.jstub;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.oss.jstub.pojo.BasicEnum;
+import org.oss.jstub.pojo.FullPojo;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Factories where most of the setters get custom values or suppliers, both
+ * built once and built with a new builder on every call, like tests usually
+ * do.
+ *
+ * @author nicu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomValuesBenchmark {
+    private StubFactory stubFactory;
+
+    @Setup
+    public void setUp() {
+        stubFactory = newBuilder().build();
+    }
+
+    @Benchmark
+    public FullPojo builtFactory() {
+        return stubFactory.createStub(FullPojo.class);
+    }
+
+    @Benchmark
+    public FullPojo builderPerCall() {
+        return newBuilder().createStub(FullPojo.class);
+    }
+
+    private static StubFactory.CustomValuesBuilder newBuilder() {
+        return StubFactory.builder()
+                .addCustomValue("setString", "a", "b", "c")
+                .addCustomValue("setBasicEnum", BasicEnum.VALUE1, BasicEnum.VALUE2)
+                .addCustomSupplier("setAnInt", () -> 42)
+                .addCustomSupplier("setaLong", System::nanoTime)
+                .addCustomSupplier("setBigDecimal", () -> BigDecimal.TEN)
+                .addIgnoredSetter("setXmlGregorianCalendar")
+                .addIgnoredSetter("setCalendar")
+                .addIgnoredSetter("setGregorianCalendar");
+    }
+}
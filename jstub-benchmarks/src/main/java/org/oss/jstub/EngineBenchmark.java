@@ -0,0 +1,50 @@
+package org.oss.jstub;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.oss.jstub.pojo.FullPojo;
+import org.oss.jstub.pojo.SimplePojo;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link StubFactory.Engine}s on the same beans.
+ *
+ * @author nicu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+    @Param({"REFLECTIVE", "COMPILED"})
+    private StubFactory.Engine engine;
+
+    private StubFactory stubFactory;
+
+    @Setup
+    public void setUp() {
+        stubFactory = StubFactory.builder().engine(engine).build();
+    }
+
+    @Benchmark
+    public SimplePojo simplePojo() {
+        return stubFactory.createStub(SimplePojo.class);
+    }
+
+    @Benchmark
+    public FullPojo fullPojo() {
+        return stubFactory.createStub(FullPojo.class);
+    }
+}
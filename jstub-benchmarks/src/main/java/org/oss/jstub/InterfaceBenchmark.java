@@ -0,0 +1,80 @@
+package org.oss.jstub;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.oss.jstub.pojo.BasicInterface;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Interface stubs: creating the proxy through {@link InterfaceHandler} and
+ * calling the methods of an already created one, with and without
+ * memoization, and the same for the generated implementation classes.
+ *
+ * @author nicu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterfaceBenchmark {
+    private final StubFactory stubFactory = StubFactory.get();
+    private BasicInterface basicInterface;
+    private BasicInterface memoizedInterface;
+    private StubFactory generatingFactory;
+    private BasicInterface generatedInterface;
+
+    @Setup
+    public void setUp() {
+        basicInterface = stubFactory.createStub(BasicInterface.class);
+        memoizedInterface = StubFactory.builder()
+                .memoizeInterfaces()
+                .createStub(BasicInterface.class);
+        generatingFactory = StubFactory.builder()
+                .generateInterfaces()
+                .build();
+        generatedInterface = generatingFactory.createStub(BasicInterface.class);
+    }
+
+    @Benchmark
+    public BasicInterface createProxy() {
+        return stubFactory.createStub(BasicInterface.class);
+    }
+
+    @Benchmark
+    public void callProxy(Blackhole blackhole) {
+        blackhole.consume(basicInterface.getString());
+        blackhole.consume(basicInterface.getInt());
+        blackhole.consume(basicInterface.getSimplePojo());
+    }
+
+    @Benchmark
+    public void callMemoizedProxy(Blackhole blackhole) {
+        blackhole.consume(memoizedInterface.getString());
+        blackhole.consume(memoizedInterface.getInt());
+        blackhole.consume(memoizedInterface.getSimplePojo());
+    }
+
+    @Benchmark
+    public BasicInterface createGenerated() {
+        return generatingFactory.createStub(BasicInterface.class);
+    }
+
+    @Benchmark
+    public void callGenerated(Blackhole blackhole) {
+        blackhole.consume(generatedInterface.getString());
+        blackhole.consume(generatedInterface.getInt());
+        blackhole.consume(generatedInterface.getSimplePojo());
+    }
+}
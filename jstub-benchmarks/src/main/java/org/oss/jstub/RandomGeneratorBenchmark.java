@@ -0,0 +1,96 @@
+package org.oss.jstub;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The generators behind the default values.
+ *
+ * @author nicu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RandomGeneratorBenchmark {
+    private final RandomGenerator random = new RandomGenerator(42);
+    private final byte[] bytes = new byte[1024];
+    private final StringGenerator unicodeStrings = StringGenerator.builder()
+            .alphabet(Alphabet.range(0x4E00, 0x9FFF))
+            .build();
+    private final StringGenerator pooledStrings = StringGenerator.builder().pool(1024).build();
+
+    @Benchmark
+    public int nextInt() {
+        return random.nextInt();
+    }
+
+    @Benchmark
+    public long nextLong() {
+        return random.nextLong();
+    }
+
+    @Benchmark
+    public double nextDouble() {
+        return random.nextDouble();
+    }
+
+    @Benchmark
+    public byte nextByte() {
+        return random.nextByte();
+    }
+
+    @Benchmark
+    public char nextChar() {
+        return random.nextChar();
+    }
+
+    @Benchmark
+    public byte[] nextBytes() {
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    @Benchmark
+    public String nextAlphabeticString() {
+        return random.nextAlphabeticString();
+    }
+
+    @Benchmark
+    public String nextAlphabeticString20() {
+        return random.nextAlphabeticString(20);
+    }
+
+    @Benchmark
+    public String nextUnicodeString() {
+        return unicodeStrings.next(random);
+    }
+
+    @Benchmark
+    public String nextPooledString() {
+        return pooledStrings.next(random);
+    }
+
+    @Benchmark
+    public Date nextDate() {
+        return random.nextDate();
+    }
+
+    @Benchmark
+    public BigDecimal nextBigDecimal() {
+        return random.nextBigDecimal();
+    }
+}
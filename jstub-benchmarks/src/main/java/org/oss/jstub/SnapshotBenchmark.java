@@ -0,0 +1,71 @@
+package org.oss.jstub;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.oss.jstub.pojo.FullPojo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generating a fixture of 10k FullPojo, compared with reloading it from a
+ * snapshot, only mapped or decoded in full.
+ *
+ * @author nicu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotBenchmark {
+    private static final int COUNT = 10_000;
+
+    private final StubFactory stubFactory = StubFactory.get();
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("jstub", ".snapshot");
+        StubFactory.writeSnapshot(file, generate(), FullPojo.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public List<FullPojo> generate() {
+        return stubFactory.createStubCollection(COUNT, ArrayList::new, FullPojo.class);
+    }
+
+    @Benchmark
+    public List<FullPojo> load() throws IOException {
+        return StubFactory.readSnapshot(file, FullPojo.class);
+    }
+
+    @Benchmark
+    public int loadAndDecode() throws IOException {
+        int sum = 0;
+        for (FullPojo stub : StubFactory.readSnapshot(file, FullPojo.class)) {
+            sum += stub.getAnInt();
+        }
+        return sum;
+    }
+}
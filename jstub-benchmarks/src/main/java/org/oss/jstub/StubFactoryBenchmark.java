@@ -0,0 +1,115 @@
+package org.oss.jstub;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.oss.jstub.pojo.FullPojo;
+import org.oss.jstub.pojo.LinkedPojo;
+import org.oss.jstub.pojo.SimplePojo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The main entry points of {@link StubFactory} with the default factory.
+ *
+ * @author nicu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StubFactoryBenchmark {
+    /**
+     * The collection size, kept out of the benchmark state so that only the collection benchmarks are run per size.
+     */
+    @State(Scope.Benchmark)
+    public static class Count {
+        @Param({"10", "1000", "10000"})
+        int count;
+    }
+
+    private final StubFactory stubFactory = StubFactory.get();
+    private final StubFactory fieldsStubFactory = StubFactory.builder()
+            .population(StubFactory.Population.FIELDS)
+            .build();
+    private final StubFactory lazyStubFactory = StubFactory.builder()
+            .lazyCollections()
+            .build();
+    private final StubFactory lazyBeansStubFactory = StubFactory.builder()
+            .lazyBeans()
+            .build();
+
+    @Benchmark
+    public StubFactory getFactory() {
+        return StubFactory.get();
+    }
+
+    @Benchmark
+    public SimplePojo createSimplePojoWithNewFactory() {
+        return StubFactory.get().createStub(SimplePojo.class);
+    }
+
+    @Benchmark
+    public SimplePojo createSimplePojoWithBuilder() {
+        return StubFactory.builder()
+                .addCustomValue("setName", "name")
+                .createStub(SimplePojo.class);
+    }
+
+    @Benchmark
+    public SimplePojo createSimplePojo() {
+        return stubFactory.createStub(SimplePojo.class);
+    }
+
+    @Benchmark
+    public FullPojo createFullPojo() {
+        return stubFactory.createStub(FullPojo.class);
+    }
+
+    @Benchmark
+    public FullPojo createFullPojoByFields() {
+        return fieldsStubFactory.createStub(FullPojo.class);
+    }
+
+    @Benchmark
+    public FullPojo createFullPojoWithLazyCollections() {
+        return lazyStubFactory.createStub(FullPojo.class);
+    }
+
+    @Benchmark
+    public FullPojo createFullPojoWithLazyBeans() {
+        return lazyBeansStubFactory.createStub(FullPojo.class);
+    }
+
+    @Benchmark
+    public String createFullPojoWithLazyBeansAndRead() {
+        FullPojo stub = lazyBeansStubFactory.createStub(FullPojo.class);
+        return stub.getString() + stub.getSimplePojo().getName();
+    }
+
+    @Benchmark
+    public LinkedPojo createWithConstructor() {
+        return stubFactory.createStub(LinkedPojo.class);
+    }
+
+    @Benchmark
+    public List<SimplePojo> createSimplePojoCollection(Count count) {
+        return stubFactory.createStubCollection(count.count, ArrayList::new, SimplePojo.class);
+    }
+
+    @Benchmark
+    public List<FullPojo> createFullPojoCollection(Count count) {
+        return stubFactory.createStubCollection(count.count, ArrayList::new, FullPojo.class);
+    }
+}
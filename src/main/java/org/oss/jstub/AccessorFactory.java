@@ -0,0 +1,258 @@
+package org.oss.jstub;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Turns the setters and getters of beans, and their fields, into functions,
+ * created once per member when the {@link StubPlan} of a class is computed. Reflective
+ * {@link Method#invoke} boxes the arguments into an {@code Object[]} and is
+ * hard for the JIT to inline, so by default accessors are spun with
+ * {@link LambdaMetafactory}, falling back to {@link MethodHandle}s and finally
+ * to reflection when the method is not accessible that way.
+ * <p>
+ * The factory is chosen for the whole JVM with the {@value #PROPERTY}
+ * system property, like {@code -Djstub.accessors=METHOD_HANDLE}, for the
+ * environments where spinning lambdas is not wanted or does not work.
+ *
+ * @author nicu
+ */
+enum AccessorFactory {
+    REFLECTION {
+        @Override
+        BiConsumer<Object, Object> setter(Method method) {
+            makeAccessible(method);
+            return (object, value) -> invokeReflective(method, object, value);
+        }
+
+        @Override
+        Function<Object, Object> getter(Method method) {
+            makeAccessible(method);
+            return object -> invokeReflective(method, object);
+        }
+    },
+    METHOD_HANDLE {
+        @Override
+        BiConsumer<Object, Object> setter(Method method) {
+            MethodHandle handle = unreflect(method);
+            if (handle == null) {
+                return REFLECTION.setter(method);
+            }
+            MethodHandle setter = handle.asType(MethodType.methodType(void.class,
+                    Object.class, Object.class));
+            return (object, value) -> {
+                try {
+                    setter.invokeExact(object, value);
+                } catch (RuntimeException | Error e) {
+                    throw e;
+                } catch (Throwable t) {
+                    throw new IllegalArgumentException(t);
+                }
+            };
+        }
+
+        @Override
+        Function<Object, Object> getter(Method method) {
+            MethodHandle handle = unreflect(method);
+            if (handle == null) {
+                return REFLECTION.getter(method);
+            }
+            MethodHandle getter = handle.asType(MethodType.methodType(Object.class, Object.class));
+            return object -> {
+                try {
+                    return getter.invokeExact(object);
+                } catch (RuntimeException | Error e) {
+                    throw e;
+                } catch (Throwable t) {
+                    throw new IllegalArgumentException(t);
+                }
+            };
+        }
+    },
+    LAMBDA_METAFACTORY {
+        @Override
+        @SuppressWarnings("unchecked")
+        BiConsumer<Object, Object> setter(Method method) {
+            MethodHandle handle = unreflect(method);
+            if (handle == null || !isVisible(method)) {
+                return METHOD_HANDLE.setter(method);
+            }
+            MethodType instantiatedType = MethodType.methodType(void.class,
+                    method.getDeclaringClass(), wrap(method.getParameterTypes()[0]));
+            BiConsumer<Object, Object> setter = (BiConsumer<Object, Object>) spin(handle,
+                    BiConsumer.class, "accept", MethodType.methodType(void.class,
+                            Object.class, Object.class), instantiatedType);
+            return setter != null ? setter : METHOD_HANDLE.setter(method);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Function<Object, Object> getter(Method method) {
+            MethodHandle handle = unreflect(method);
+            if (handle == null || !isVisible(method)) {
+                return METHOD_HANDLE.getter(method);
+            }
+            MethodType instantiatedType = MethodType.methodType(wrap(method.getReturnType()),
+                    method.getDeclaringClass());
+            Function<Object, Object> getter = (Function<Object, Object>) spin(handle,
+                    Function.class, "apply", MethodType.methodType(Object.class, Object.class),
+                    instantiatedType);
+            return getter != null ? getter : METHOD_HANDLE.getter(method);
+        }
+
+        @Override
+        Object typedSetter(Method method, Class<?> setterInterface) {
+            MethodHandle handle = unreflect(method);
+            if (handle == null || !isVisible(method)) {
+                return null;
+            }
+            Class<?> parameterType = method.getParameterTypes()[0];
+            return spin(handle, setterInterface, "set",
+                    MethodType.methodType(void.class, Object.class, parameterType),
+                    MethodType.methodType(void.class, method.getDeclaringClass(), parameterType));
+        }
+    };
+
+    /**
+     * System property naming the factory used for all the accessors, one
+     * of the constant names; {@link #LAMBDA_METAFACTORY} when not set
+     */
+    static final String PROPERTY = "jstub.accessors";
+    static final AccessorFactory DEFAULT = of(System.getProperty(PROPERTY));
+
+    /**
+     * @param name name of one of the factories, or null for the default one
+     */
+    static AccessorFactory of(String name) {
+        if (name == null || name.isEmpty()) {
+            return LAMBDA_METAFACTORY;
+        }
+        try {
+            return valueOf(name.trim());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown accessor factory '" + name + "' in " + PROPERTY
+                    + ", expected one of " + Arrays.toString(values()), e);
+        }
+    }
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    /**
+     * @return function calling the one argument method on the given object
+     */
+    abstract BiConsumer<Object, Object> setter(Method method);
+
+    /**
+     * @return function calling the no argument method on the given object
+     */
+    abstract Function<Object, Object> getter(Method method);
+
+    /**
+     * @return implementation of the given functional interface, whose
+     * {@code set(Object, primitive)} method calls the one primitive argument
+     * method without boxing, or null if this factory cannot create it
+     */
+    Object typedSetter(Method method, Class<?> setterInterface) {
+        return null;
+    }
+
+    /**
+     * @return function writing the field, which must be accessible, on the
+     * given object; fields have no method for {@link LambdaMetafactory} to
+     * call, so this is always a method handle
+     */
+    static BiConsumer<Object, Object> setter(Field field) {
+        MethodHandle setter = setterHandle(field).asType(MethodType.methodType(void.class,
+                Object.class, Object.class));
+        return (object, value) -> {
+            try {
+                setter.invokeExact(object, value);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalArgumentException(t);
+            }
+        };
+    }
+
+    /**
+     * @return handle writing the field, which must be accessible, with the
+     * type {@code (Object, fieldType)void}, so primitive values are passed
+     * to {@link MethodHandle#invokeExact} without being boxed
+     */
+    static MethodHandle setterHandle(Field field) {
+        try {
+            return LOOKUP.unreflectSetter(field).asType(MethodType.methodType(void.class,
+                    Object.class, field.getType()));
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot write field " + field, e);
+        }
+    }
+
+    private static MethodHandle unreflect(Method method) {
+        try {
+            return LOOKUP.unreflect(method);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    private static Object spin(MethodHandle handle, Class<?> functionalInterface, String name,
+                               MethodType erasedType, MethodType instantiatedType) {
+        try {
+            CallSite callSite = LambdaMetafactory.metafactory(LOOKUP, name,
+                    MethodType.methodType(functionalInterface), erasedType, handle, instantiatedType);
+            return callSite.getTarget().invoke();
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    // the spun classes live next to this one, so they must see the bean classes
+    private static boolean isVisible(Method method) {
+        Class<?> cls = method.getDeclaringClass();
+        try {
+            return Class.forName(cls.getName(), false, AccessorFactory.class.getClassLoader()) == cls;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private static Class<?> wrap(Class<?> cls) {
+        return MethodType.methodType(cls).wrap().returnType();
+    }
+
+    private static void makeAccessible(Method method) {
+        try {
+            method.setAccessible(true);
+        } catch (RuntimeException e) {
+            // Method#invoke reports it if it is really not accessible
+        }
+    }
+
+    private static Object invokeReflective(Method method, Object object, Object... args) {
+        try {
+            return method.invoke(object, args);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException(e);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalArgumentException(cause);
+        }
+    }
+}
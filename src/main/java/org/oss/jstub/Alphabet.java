@@ -0,0 +1,141 @@
+package org.oss.jstub;
+
+import java.util.Arrays;
+
+/**
+ * The characters a {@link StringGenerator} picks from, all with the same
+ * probability. Alphabets are immutable and can be shared by threads.
+ * <p>
+ * Characters are drawn from the bits of {@link RandomGenerator#nextLong()}:
+ * the smallest number of bits that can index the alphabet is taken for
+ * every character, and the indexes outside of it are dropped instead of
+ * being folded back with a modulo, which would favour the first
+ * characters. A long gives about ten characters of the 52 letters.
+ * Alphabets of Latin-1 characters build their strings from bytes, without
+ * going through a charset.
+ *
+ * @author nicu
+ */
+public final class Alphabet {
+    public static final Alphabet LOWERCASE = range('a', 'z');
+    public static final Alphabet UPPERCASE = range('A', 'Z');
+    public static final Alphabet LETTERS = LOWERCASE.union(UPPERCASE);
+    public static final Alphabet DIGITS = range('0', '9');
+    public static final Alphabet ALPHANUMERIC = LETTERS.union(DIGITS);
+
+    private final int[] codePoints;
+    /*the characters as bytes, padded to the mask, null if some of them are not Latin-1*/
+    private final byte[] latin1;
+    private final int bits;
+    private final int mask;
+    private final int perLong;
+
+    private Alphabet(int[] codePoints) {
+        if (codePoints.length == 0) {
+            throw new IllegalArgumentException("Empty alphabet");
+        }
+        this.codePoints = codePoints;
+        this.bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(codePoints.length - 1));
+        this.mask = (1 << bits) - 1;
+        this.latin1 = toLatin1(codePoints, mask + 1);
+        this.perLong = 64 / bits;
+    }
+
+    /**
+     * @return alphabet of the characters of the string, which must not
+     * contain surrogates; repeated characters are picked more often
+     */
+    public static Alphabet of(String characters) {
+        int[] codePoints = characters.codePoints().toArray();
+        for (int codePoint : codePoints) {
+            checkCodePoint(codePoint);
+        }
+        return new Alphabet(codePoints);
+    }
+
+    /**
+     * @return alphabet of the Unicode code points from {@code first} to
+     * {@code last}, inclusive, like {@code range(0x4E00, 0x9FFF)} for CJK
+     * ideographs; supplementary code points are allowed, surrogates are not
+     */
+    public static Alphabet range(int first, int last) {
+        if (first > last) {
+            throw new IllegalArgumentException("Empty range " + first + ".." + last);
+        }
+        checkCodePoint(first);
+        checkCodePoint(last);
+        if (first <= Character.MAX_SURROGATE && last >= Character.MIN_SURROGATE) {
+            throw new IllegalArgumentException("Range with surrogates " + first + ".." + last);
+        }
+        int[] codePoints = new int[last - first + 1];
+        for (int i = 0; i < codePoints.length; i++) {
+            codePoints[i] = first + i;
+        }
+        return new Alphabet(codePoints);
+    }
+
+    /**
+     * @return alphabet of the characters of both alphabets
+     */
+    public Alphabet union(Alphabet other) {
+        int[] union = Arrays.copyOf(codePoints, codePoints.length + other.codePoints.length);
+        System.arraycopy(other.codePoints, 0, union, codePoints.length, other.codePoints.length);
+        return new Alphabet(union);
+    }
+
+    public int size() {
+        return codePoints.length;
+    }
+
+    /**
+     * @return string of {@code length} characters (code points) of the alphabet
+     */
+    @SuppressWarnings("deprecation")// the only constructor that copies bytes as they are
+    String nextString(RandomGenerator random, int length) {
+        if (latin1 != null) {
+            byte[] bytes = new byte[length];
+            int size = codePoints.length;
+            int i = 0;
+            while (i < length) {
+                long bits = random.nextLong();
+                for (int n = perLong; n > 0 && i < length; n--, bits >>>= this.bits) {
+                    // written anyway and overwritten if rejected, without a branch to mispredict
+                    int index = (int) bits & mask;
+                    bytes[i] = latin1[index];
+                    i += (size - 1 - index) >>> 31 ^ 1;
+                }
+            }
+            return new String(bytes, 0, 0, length);
+        }
+        int[] chars = new int[length];
+        int i = 0;
+        while (i < length) {
+            long bits = random.nextLong();
+            for (int n = perLong; n > 0 && i < length; n--, bits >>>= this.bits) {
+                int index = (int) bits & mask;
+                if (index < codePoints.length) {
+                    chars[i++] = codePoints[index];
+                }
+            }
+        }
+        return new String(chars, 0, length);
+    }
+
+    private static byte[] toLatin1(int[] codePoints, int length) {
+        byte[] latin1 = new byte[length];
+        for (int i = 0; i < codePoints.length; i++) {
+            if (codePoints[i] > 0xFF) {
+                return null;
+            }
+            latin1[i] = (byte) codePoints[i];
+        }
+        return latin1;
+    }
+
+    private static void checkCodePoint(int codePoint) {
+        if (!Character.isValidCodePoint(codePoint)
+                || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+            throw new IllegalArgumentException("Invalid character " + codePoint);
+        }
+    }
+}
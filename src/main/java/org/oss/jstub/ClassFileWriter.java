@@ -0,0 +1,409 @@
+package org.oss.jstub;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal writer of Java 8 class files, for the few classes that jstub
+ * generates at runtime instead of going through reflection. It only knows the
+ * instructions these classes need and only writes straight-line code: without
+ * branches the class files need no stack map frames, and the maximum stack
+ * size can be tracked while the instructions are written.
+ *
+ * @author nicu
+ */
+final class ClassFileWriter {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+    static final int ACC_SYNTHETIC = 0x1000;
+
+    private static final int JAVA_8 = 52;
+
+    private final ConstantPool constantPool = new ConstantPool();
+    private final String name;
+    private final int thisClass;
+    private final int superClass;
+    private final int[] interfaces;
+    private final ByteArrayOutputStream fields = new ByteArrayOutputStream();
+    private final List<Code> methods = new ArrayList<>();
+    private int fieldCount;
+
+    /**
+     * @param name       internal name (with slashes) of the class
+     * @param superName  internal name of the super class
+     * @param interfaces internal names of the implemented interfaces
+     */
+    ClassFileWriter(String name, String superName, String... interfaces) {
+        this.name = name;
+        this.thisClass = constantPool.classInfo(name);
+        this.superClass = constantPool.classInfo(superName);
+        this.interfaces = new int[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++) {
+            this.interfaces[i] = constantPool.classInfo(interfaces[i]);
+        }
+    }
+
+    void field(int access, String name, String descriptor) {
+        DataOutputStream out = new DataOutputStream(fields);
+        try {
+            out.writeShort(access);
+            out.writeShort(constantPool.utf8(name));
+            out.writeShort(constantPool.utf8(descriptor));
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        fieldCount++;
+    }
+
+    /**
+     * @return the code of the new instance method, to be written in full before
+     * {@link #toByteArray()} is called
+     */
+    Code method(int access, String name, String descriptor) {
+        Code code = new Code(access, constantPool.utf8(name), constantPool.utf8(descriptor),
+                argumentSlots(descriptor) + 1);
+        methods.add(code);
+        return code;
+    }
+
+    byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            int codeAttribute = constantPool.utf8("Code");
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(JAVA_8);
+            constantPool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.length);
+            for (int i : interfaces) {
+                out.writeShort(i);
+            }
+            out.writeShort(fieldCount);
+            fields.writeTo(out);
+            out.writeShort(methods.size());
+            for (Code method : methods) {
+                method.writeTo(out, codeAttribute);
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Defines the class in a class loader of its own, child of the given
+     * one, so that it can be unloaded with the classes it extends or
+     * implements, and initializes it, which verifies it.
+     *
+     * @throws LinkageError if the class is not valid, or if the classes it
+     *                      refers to are not visible from the parent loader
+     */
+    Class<?> define(ClassLoader parent) throws ClassNotFoundException {
+        byte[] classFile = toByteArray();
+        Class<?> cls = new GeneratedClassLoader(parent).define(name.replace('/', '.'), classFile);
+        return Class.forName(cls.getName(), true, cls.getClassLoader());
+    }
+
+    /**
+     * @return if the class was defined by {@link #define(ClassLoader)}
+     */
+    static boolean isGenerated(Class<?> cls) {
+        return cls.getClassLoader() instanceof GeneratedClassLoader;
+    }
+
+    static String internalName(Class<?> cls) {
+        return cls.getName().replace('.', '/');
+    }
+
+    static String descriptor(Class<?> cls) {
+        if (cls.isPrimitive()) {
+            return String.valueOf(primitiveDescriptor(cls));
+        }
+        if (cls.isArray()) {
+            return internalName(cls);
+        }
+        return "L" + internalName(cls) + ";";
+    }
+
+    static String descriptor(Method method) {
+        return descriptor(method.getReturnType(), method.getParameterTypes());
+    }
+
+    static String descriptor(Class<?> returnType, Class<?>... parameterTypes) {
+        StringBuilder descriptor = new StringBuilder("(");
+        for (Class<?> parameterType : parameterTypes) {
+            descriptor.append(descriptor(parameterType));
+        }
+        return descriptor.append(')').append(descriptor(returnType)).toString();
+    }
+
+    private static char primitiveDescriptor(Class<?> cls) {
+        if (cls == boolean.class) {
+            return 'Z';
+        } else if (cls == byte.class) {
+            return 'B';
+        } else if (cls == char.class) {
+            return 'C';
+        } else if (cls == short.class) {
+            return 'S';
+        } else if (cls == int.class) {
+            return 'I';
+        } else if (cls == long.class) {
+            return 'J';
+        } else if (cls == float.class) {
+            return 'F';
+        } else if (cls == double.class) {
+            return 'D';
+        }
+        return 'V';
+    }
+
+    /*number of local variable slots taken by the arguments of a method descriptor*/
+    private static int argumentSlots(String descriptor) {
+        int slots = 0;
+        for (int i = 1; descriptor.charAt(i) != ')'; i++) {
+            char c = descriptor.charAt(i);
+            slots += c == 'J' || c == 'D' ? 2 : 1;
+            while (c == '[') {
+                c = descriptor.charAt(++i);
+            }
+            if (c == 'L') {
+                i = descriptor.indexOf(';', i);
+            }
+        }
+        return slots;
+    }
+
+    /*stack slots taken by a value of the type starting at the given index of a descriptor*/
+    private static int valueSlots(String descriptor, int index) {
+        char c = descriptor.charAt(index);
+        return c == 'V' ? 0 : c == 'J' || c == 'D' ? 2 : 1;
+    }
+
+    /**
+     * Code of a method; every instruction keeps track of the stack depth, so
+     * the maximum does not need to be given.
+     */
+    final class Code {
+        private final int access;
+        private final int name;
+        private final int descriptor;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private int maxLocals;
+        private int stack;
+        private int maxStack;
+
+        private Code(int access, int name, int descriptor, int maxLocals) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.maxLocals = maxLocals;
+        }
+
+        /**
+         * Loads the local variable (like an argument) of the given type
+         */
+        Code load(Class<?> type, int index) {
+            int opcode = type == long.class ? 0x16 : type == float.class ? 0x17
+                    : type == double.class ? 0x18 : type.isPrimitive() ? 0x15 : 0x19;
+            op(opcode, slots(type));
+            bytes.write(index);
+            maxLocals = Math.max(maxLocals, index + slots(type));
+            return this;
+        }
+
+        Code loadThis() {
+            return load(Object.class, 0);
+        }
+
+        /**
+         * Pushes an int constant
+         */
+        Code pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                op(0x03 + value, 1);// iconst_<value>
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op(0x10, 1);// bipush
+                bytes.write(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op(0x11, 1);// sipush
+                writeShort(value);
+            } else {
+                op(0x13, 1);// ldc_w
+                writeShort(constantPool.integer(value));
+            }
+            return this;
+        }
+
+        Code getField(String owner, String name, String descriptor) {
+            op(0xb4, valueSlots(descriptor, 0) - 1);
+            writeShort(constantPool.member(9, owner, name, descriptor));
+            return this;
+        }
+
+        /**
+         * Sets the field of the object below the value on the stack; in a
+         * constructor, the fields of the class itself can be set on
+         * {@code this} before the super constructor is called
+         */
+        Code putField(String owner, String name, String descriptor) {
+            op(0xb5, -1 - valueSlots(descriptor, 0));
+            writeShort(constantPool.member(9, owner, name, descriptor));
+            return this;
+        }
+
+        Code invokeSpecial(String owner, String name, String descriptor) {
+            return invoke(0xb7, 10, owner, name, descriptor, 1);
+        }
+
+        Code invokeInterface(String owner, String name, String descriptor) {
+            invoke(0xb9, 11, owner, name, descriptor, 1);
+            bytes.write(argumentSlots(descriptor) + 1);
+            bytes.write(0);
+            return this;
+        }
+
+        /**
+         * Returns from the method, with the value on the stack if the return
+         * type is not void
+         */
+        Code returnValue(Class<?> type) {
+            int opcode = type == void.class ? 0xb1 : type == long.class ? 0xad
+                    : type == float.class ? 0xae : type == double.class ? 0xaf
+                    : type.isPrimitive() ? 0xac : 0xb0;
+            op(opcode, -slots(type));
+            return this;
+        }
+
+        private Code invoke(int opcode, int tag, String owner, String name, String descriptor,
+                            int receiver) {
+            int returnSlots = valueSlots(descriptor, descriptor.indexOf(')') + 1);
+            op(opcode, returnSlots - argumentSlots(descriptor) - receiver);
+            writeShort(constantPool.member(tag, owner, name, descriptor));
+            return this;
+        }
+
+        private void op(int opcode, int stackChange) {
+            bytes.write(opcode);
+            stack += stackChange;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        private void writeShort(int value) {
+            bytes.write(value >>> 8);
+            bytes.write(value);
+        }
+
+        private int slots(Class<?> type) {
+            return type == void.class ? 0 : type == long.class || type == double.class ? 2 : 1;
+        }
+
+        private void writeTo(DataOutputStream out, int codeAttribute) throws IOException {
+            out.writeShort(access);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(1);
+            out.writeShort(codeAttribute);
+            out.writeInt(12 + bytes.size());
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+            out.writeShort(0);// exception table
+            out.writeShort(0);// attributes
+        }
+    }
+
+    private static final class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private int count = 1;
+
+        int utf8(String value) {
+            return entry("utf8 " + value, () -> {
+                out.writeByte(1);
+                out.writeUTF(value);
+            });
+        }
+
+        int classInfo(String internalName) {
+            int name = utf8(internalName);
+            return entry("class " + internalName, () -> {
+                out.writeByte(7);
+                out.writeShort(name);
+            });
+        }
+
+        int integer(int value) {
+            return entry("int " + value, () -> {
+                out.writeByte(3);
+                out.writeInt(value);
+            });
+        }
+
+        /*field (tag 9), method (10) or interface method (11) reference*/
+        int member(int tag, String owner, String name, String descriptor) {
+            int ownerIndex = classInfo(owner);
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            int nameAndType = entry("nat " + name + " " + descriptor, () -> {
+                out.writeByte(12);
+                out.writeShort(nameIndex);
+                out.writeShort(descriptorIndex);
+            });
+            return entry(tag + " " + owner + "." + name + " " + descriptor, () -> {
+                out.writeByte(tag);
+                out.writeShort(ownerIndex);
+                out.writeShort(nameAndType);
+            });
+        }
+
+        void writeTo(DataOutputStream classFile) throws IOException {
+            classFile.writeShort(count);
+            bytes.writeTo(classFile);
+        }
+
+        private int entry(String key, Entry entry) {
+            Integer index = indexes.get(key);
+            if (index != null) {
+                return index;
+            }
+            try {
+                entry.write();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            indexes.put(key, count);
+            return count++;
+        }
+
+        private interface Entry {
+            void write() throws IOException;
+        }
+    }
+
+    private static final class GeneratedClassLoader extends ClassLoader {
+        GeneratedClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] classFile) {
+            return defineClass(name, classFile, 0, classFile.length);
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package org.oss.jstub;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+import java.util.AbstractCollection;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractQueue;
+import java.util.AbstractSequentialList;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Dictionary;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.Stack;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.Vector;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TransferQueue;
+import java.util.function.UnaryOperator;
+
+/**
+ * How {@link StubFactory} creates the collections and maps of a declared
+ * type, resolved once per type and cached in a {@link ClassValue}: the
+ * declared class itself when it is concrete, the usual implementation of
+ * the JDK interfaces and abstract classes (ArrayList for List, TreeMap for
+ * SortedMap, ArrayDeque for Deque, EnumSet for EnumSet...), and otherwise
+ * the first known implementation assignable to the declared type.
+ * <p>
+ * Collections are created for the number of elements they will get: hash
+ * based ones with the capacity that holds them under the default load
+ * factor, so they never rehash, array based ones with the exact capacity.
+ * Those that refuse nulls, like the concurrent and sorted ones, are flagged
+ * so that generated nulls are left out of them.
+ *
+ * @author nicu
+ */
+final class CollectionFactory {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    /*the implementations of the JDK types, presized*/
+    private static final Map<Class<?>, Creator> CREATORS = new HashMap<>();
+    /*refuse null elements, or null keys for maps*/
+    private static final Set<Class<?>> NULL_HOSTILE = new HashSet<>();
+    /*tried in order for the declared types that are not in CREATORS*/
+    private static final List<Class<?>> FALLBACKS = Arrays.asList(ArrayList.class, HashSet.class,
+            HashMap.class, ArrayDeque.class, TreeSet.class, TreeMap.class, LinkedList.class,
+            ConcurrentHashMap.class, ConcurrentSkipListMap.class, ConcurrentSkipListSet.class,
+            LinkedBlockingDeque.class, LinkedTransferQueue.class, PriorityQueue.class);
+    /*the closest of them is given to the collections of hidden classes, like the unmodifiable views*/
+    private static final List<Class<?>> INTERFACES = Arrays.asList(NavigableSet.class, SortedSet.class,
+            Set.class, List.class, Deque.class, Queue.class, Collection.class, ConcurrentNavigableMap.class,
+            NavigableMap.class, SortedMap.class, ConcurrentMap.class, Map.class);
+    private static final ClassValue<CollectionFactory> FACTORIES = new ClassValue<CollectionFactory>() {
+        @Override
+        protected CollectionFactory computeValue(Class<?> type) {
+            return resolve(type);
+        }
+    };
+
+    static {
+        creator(ArrayList::new, ArrayList.class, AbstractList.class, List.class, Collection.class,
+                AbstractCollection.class);
+        creator(size -> new HashSet<>(capacity(size)), HashSet.class, AbstractSet.class, Set.class);
+        creator(size -> new LinkedHashSet<>(capacity(size)), LinkedHashSet.class);
+        creator(size -> new TreeSet<>(), TreeSet.class, SortedSet.class, NavigableSet.class);
+        creator(size -> new HashMap<>(capacity(size)), HashMap.class, AbstractMap.class, Map.class);
+        creator(size -> new LinkedHashMap<>(capacity(size)), LinkedHashMap.class);
+        creator(size -> new TreeMap<>(), TreeMap.class, SortedMap.class, NavigableMap.class);
+        creator(size -> new IdentityHashMap<>(size), IdentityHashMap.class);
+        creator(size -> new WeakHashMap<>(capacity(size)), WeakHashMap.class);
+        creator(size -> new Hashtable<>(capacity(size)), Hashtable.class, Dictionary.class);
+        creator(size -> new LinkedList<>(), LinkedList.class, AbstractSequentialList.class);
+        creator(ArrayDeque::new, ArrayDeque.class, Deque.class, Queue.class);
+        creator(size -> new PriorityQueue<>(Math.max(1, size)), PriorityQueue.class, AbstractQueue.class);
+        creator(Vector::new, Vector.class);
+        creator(size -> new Stack<>(), Stack.class);
+        // ConcurrentHashMap takes the number of elements, not the capacity
+        creator(ConcurrentHashMap::new, ConcurrentHashMap.class, ConcurrentMap.class);
+        creator(size -> new ConcurrentSkipListMap<>(), ConcurrentSkipListMap.class, ConcurrentNavigableMap.class);
+        creator(size -> new ConcurrentSkipListSet<>(), ConcurrentSkipListSet.class);
+        creator(size -> new CopyOnWriteArrayList<>(), CopyOnWriteArrayList.class);
+        creator(size -> new CopyOnWriteArraySet<>(), CopyOnWriteArraySet.class);
+        creator(size -> new ConcurrentLinkedQueue<>(), ConcurrentLinkedQueue.class);
+        creator(size -> new ConcurrentLinkedDeque<>(), ConcurrentLinkedDeque.class);
+        creator(size -> new LinkedBlockingQueue<>(), LinkedBlockingQueue.class);
+        creator(size -> new LinkedBlockingDeque<>(), LinkedBlockingDeque.class, BlockingDeque.class,
+                BlockingQueue.class);
+        creator(size -> new ArrayBlockingQueue<>(Math.max(1, size)), ArrayBlockingQueue.class);
+        creator(size -> new PriorityBlockingQueue<>(Math.max(1, size)), PriorityBlockingQueue.class);
+        creator(size -> new LinkedTransferQueue<>(), LinkedTransferQueue.class, TransferQueue.class);
+        NULL_HOSTILE.addAll(Arrays.asList(TreeSet.class, SortedSet.class, NavigableSet.class, TreeMap.class,
+                SortedMap.class, NavigableMap.class, Hashtable.class, Dictionary.class, ArrayDeque.class,
+                Deque.class, Queue.class, PriorityQueue.class, AbstractQueue.class, ConcurrentHashMap.class,
+                ConcurrentMap.class, ConcurrentSkipListMap.class, ConcurrentNavigableMap.class,
+                ConcurrentSkipListSet.class, ConcurrentLinkedQueue.class, ConcurrentLinkedDeque.class,
+                LinkedBlockingQueue.class, LinkedBlockingDeque.class, BlockingDeque.class, BlockingQueue.class,
+                ArrayBlockingQueue.class, PriorityBlockingQueue.class, LinkedTransferQueue.class,
+                TransferQueue.class, EnumSet.class, EnumMap.class));
+    }
+
+    private final Class<?> type;
+    private final boolean map;
+    private final Creator creator;
+    private final boolean permitsNulls;
+    /*if the creator returns instances of the type itself*/
+    private final boolean exact;
+    /*null if the declared type does not allow an unmodifiable view*/
+    private final UnaryOperator<Object> immutable;
+
+    private CollectionFactory(Class<?> type, Creator creator, boolean permitsNulls, boolean exact) {
+        this.type = type;
+        this.map = Map.class.isAssignableFrom(type);
+        this.creator = creator;
+        this.permitsNulls = permitsNulls;
+        this.exact = exact;
+        this.immutable = immutable(type);
+    }
+
+    /**
+     * @return if values of the class are generated as collections or maps
+     */
+    static boolean isCollection(Class<?> cls) {
+        return Collection.class.isAssignableFrom(cls) || Map.class.isAssignableFrom(cls);
+    }
+
+    /**
+     * @param type a collection or map class, see {@link #isCollection(Class)}
+     */
+    static CollectionFactory of(Class<?> type) {
+        return FACTORIES.get(type);
+    }
+
+    /**
+     * @return the class that a collection or map is created again as: its
+     * own class if it is public and its factory creates instances of it,
+     * EnumSet for the hidden implementations of EnumSet, otherwise the JDK
+     * interface closest to it, like for the unmodifiable views
+     */
+    static Class<?> implementationOf(Object collection) {
+        if (collection instanceof EnumSet) {
+            return EnumSet.class;
+        }
+        Class<?> type = collection.getClass();
+        if (Modifier.isPublic(type.getModifiers()) && of(type).exact) {
+            return type;
+        }
+        for (Class<?> cls : INTERFACES) {
+            if (cls.isInstance(collection)) {
+                return cls;
+            }
+        }
+        throw new IllegalArgumentException("Not a collection or map: " + type.getName());
+    }
+
+    boolean isMap() {
+        return map;
+    }
+
+    /**
+     * @return if nulls can be added, as elements or as keys
+     */
+    boolean permitsNulls() {
+        return permitsNulls;
+    }
+
+    /**
+     * @param size        the number of elements the collection will get
+     * @param elementType the class of the elements, or of the keys of maps
+     */
+    @SuppressWarnings("unchecked")
+    Collection<Object> newCollection(int size, Class<?> elementType) {
+        return (Collection<Object>) create(size, elementType);
+    }
+
+    /**
+     * @see #newCollection(int, Class)
+     */
+    @SuppressWarnings("unchecked")
+    Map<Object, Object> newMap(int size, Class<?> keyType) {
+        return (Map<Object, Object>) create(size, keyType);
+    }
+
+    /**
+     * @return if the declared type is an interface (or a JDK abstract
+     * class) that an unmodifiable view can be given for
+     */
+    boolean allowsImmutable() {
+        return immutable != null;
+    }
+
+    /**
+     * @return an unmodifiable view of the collection or map, or for no or
+     * one element an empty or singleton one
+     */
+    Object immutable(Object collection) {
+        return immutable.apply(collection);
+    }
+
+    private Object create(int size, Class<?> elementType) {
+        Object collection;
+        try {
+            collection = creator.create(size, elementType);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Cannot create a collection of type " + type.getName(), e);
+        }
+        if (elementType != null && isSorted(collection) && !elementType.isInterface()
+                && !Comparable.class.isAssignableFrom(elementType)) {
+            throw new IllegalArgumentException("Cannot create a collection of type " + type.getName()
+                    + " with " + (map ? "keys" : "elements") + " of type " + elementType.getName()
+                    + ", which is not Comparable");
+        }
+        return collection;
+    }
+
+    /*sorted by the natural order of their elements, or keys, as none is given a comparator*/
+    private static boolean isSorted(Object collection) {
+        return collection instanceof SortedSet || collection instanceof SortedMap
+                || collection instanceof PriorityQueue || collection instanceof PriorityBlockingQueue;
+    }
+
+    private static CollectionFactory resolve(Class<?> type) {
+        if (type == EnumSet.class) {
+            return new CollectionFactory(type, (size, elementType) -> noneOf(enumType(elementType)), false, false);
+        }
+        if (type == EnumMap.class) {
+            return new CollectionFactory(type, (size, keyType) -> enumMap(enumType(keyType)), false, true);
+        }
+        Creator creator = CREATORS.get(type);
+        if (creator != null) {
+            boolean exact = !type.isInterface() && !Modifier.isAbstract(type.getModifiers());
+            return new CollectionFactory(type, creator, !NULL_HOSTILE.contains(type), exact);
+        }
+        if (!type.isInterface() && !Modifier.isAbstract(type.getModifiers())) {
+            MethodHandle constructor = defaultConstructor(type);
+            if (constructor != null) {
+                // null hostile if it extends one, like a TreeMap subclass
+                boolean permitsNulls = NULL_HOSTILE.stream().noneMatch(cls -> cls.isAssignableFrom(type));
+                return new CollectionFactory(type, (size, elementType) -> newInstance(constructor), permitsNulls,
+                        true);
+            }
+        }
+        for (Class<?> fallback : FALLBACKS) {
+            if (type.isAssignableFrom(fallback)) {
+                return new CollectionFactory(type, CREATORS.get(fallback), !NULL_HOSTILE.contains(fallback),
+                        false);
+            }
+        }
+        return new CollectionFactory(type, (size, elementType) -> {
+            throw new IllegalStateException("No implementation with a public default constructor");
+        }, true, false);
+    }
+
+    private static UnaryOperator<Object> immutable(Class<?> type) {
+        if (type == List.class || type == Collection.class || type == AbstractList.class
+                || type == AbstractCollection.class) {
+            return collection -> {
+                List<?> list = (List<?>) collection;
+                return list.isEmpty() ? Collections.emptyList()
+                        : list.size() == 1 ? Collections.singletonList(list.get(0))
+                        : Collections.unmodifiableList(list);
+            };
+        }
+        if (type == Set.class || type == AbstractSet.class) {
+            return collection -> {
+                Set<?> set = (Set<?>) collection;
+                return set.isEmpty() ? Collections.emptySet()
+                        : set.size() == 1 ? Collections.singleton(set.iterator().next())
+                        : Collections.unmodifiableSet(set);
+            };
+        }
+        if (type == SortedSet.class || type == NavigableSet.class) {
+            return collection -> Collections.unmodifiableNavigableSet((NavigableSet<?>) collection);
+        }
+        if (type == Map.class || type == AbstractMap.class) {
+            return collection -> {
+                Map<?, ?> map = (Map<?, ?>) collection;
+                if (map.size() == 1) {
+                    Map.Entry<?, ?> entry = map.entrySet().iterator().next();
+                    return Collections.singletonMap(entry.getKey(), entry.getValue());
+                }
+                return map.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(map);
+            };
+        }
+        if (type == SortedMap.class || type == NavigableMap.class) {
+            return collection -> Collections.unmodifiableNavigableMap((NavigableMap<?, ?>) collection);
+        }
+        return null;
+    }
+
+    /*the initial capacity of a hash table holding the elements under the default load factor*/
+    private static int capacity(int size) {
+        return (int) (size / 0.75f) + 1;
+    }
+
+    private static void creator(SizedCreator creator, Class<?>... types) {
+        for (Class<?> type : types) {
+            CREATORS.put(type, (size, elementType) -> creator.create(size));
+        }
+    }
+
+    private static Class<?> enumType(Class<?> elementType) {
+        if (!elementType.isEnum()) {
+            throw new IllegalArgumentException(elementType.getName() + " is not an enum");
+        }
+        return elementType;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Enum<E>> EnumSet<E> noneOf(Class<?> enumType) {
+        return EnumSet.noneOf((Class<E>) enumType);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K extends Enum<K>> EnumMap<K, Object> enumMap(Class<?> enumType) {
+        return new EnumMap<>((Class<K>) enumType);
+    }
+
+    private static MethodHandle defaultConstructor(Class<?> type) {
+        try {
+            return LOOKUP.findConstructor(type, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    private static Object newInstance(MethodHandle constructor) {
+        try {
+            return constructor.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalArgumentException(t);
+        }
+    }
+
+    private interface Creator {
+        Object create(int size, Class<?> elementType);
+    }
+
+    private interface SizedCreator {
+        Object create(int size);
+    }
+}
@@ -0,0 +1,230 @@
+package org.oss.jstub;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * State of a single generation, i.e. of one {@code createStub} or
+ * {@code createStubCollection} call. It is passed down the recursion instead
+ * of being kept in the factory, so a {@link StubFactory} can be shared by
+ * many threads without locking and without generations seeing each other's
+ * objects. Parallel generations give each worker its own context.
+ * <p>
+ * The context keeps the path of the beans being generated, from the top level
+ * one, so a bean that needs an instance of one of its ancestors (as a
+ * property, collection element or constructor parameter) gets that one
+ * instead of recursing forever. It also bounds the depth of the path and the
+ * number of beans of every stub, and decides, following the
+ * {@link StubFactory.Sharing} policy, which already created beans are reused.
+ * Pools and interned values live as long as the context, so they are shared
+ * by all the stubs of a collection (of a chunk, for parallel generations);
+ * streams, which may never end, clear the interned values for every stub.
+ * <p>
+ * A context is created for every {@code createStub} call, most of which
+ * generate a single value or a bean without sharing, so the maps, the path
+ * and the interned table are only allocated once a bean or an immutable
+ * value actually needs them.
+ *
+ * @author nicu
+ */
+final class GenerationContext {
+    /*size of the table of interned values, a power of two*/
+    private static final int INTERNED_SLOTS = 1024;
+    /*reseeded for every stub instead of forked, to not allocate per stub*/
+    private final RandomGenerator random = new RandomGenerator(0);
+    private final StubFactory.Sharing sharing;
+    private final int poolSize;
+    private final int maxDepth;
+    private final int maxObjects;
+    private final StubFactory.Limit limit;
+    private final boolean internImmutables;
+    /*last instance of every class in the current stub, null until the first bean*/
+    private Map<Class<?>, Object> instances;
+    /*beans being generated, the instance is null until it is created; null until the first bean*/
+    private List<Class<?>> pathTypes;
+    private List<Object> path;
+    /*only with POOLED sharing, null until the first bean*/
+    private Map<Class<?>, Pool> pools;
+    /*
+     * Interned values by hash, a value replacing the one of its slot, so the
+     * table does not grow with the number of stubs; null until the first
+     * interned value
+     */
+    private Object[] interned;
+    private boolean internedAny;
+    private int objects;
+
+    GenerationContext(StubFactory.Sharing sharing, int poolSize, boolean internImmutables,
+                      int maxDepth, int maxObjects, StubFactory.Limit limit) {
+        this.sharing = sharing;
+        this.poolSize = poolSize;
+        this.internImmutables = internImmutables;
+        this.maxDepth = maxDepth;
+        this.maxObjects = maxObjects;
+        this.limit = limit;
+    }
+
+    /**
+     * Starts the generation of a new top level stub with the given random
+     * seed. Unless they are pooled or interned, stubs do not share objects
+     * with each other, so each of them depends only on its seed, not on what
+     * was generated before it.
+     */
+    void startStub(long seed) {
+        random.setSeed(seed);
+        if (instances != null) {
+            instances.clear();
+        }
+        if (path != null) {
+            pathTypes.clear();
+            path.clear();
+        }
+        objects = 0;
+    }
+
+    RandomGenerator getRandom() {
+        return random;
+    }
+
+    /**
+     * @return already created instance of the type that the sharing policy
+     * gives to a property instead of a new one, or null if a new one has to
+     * be generated
+     */
+    Object reusable(Class<?> type) {
+        if (sharing == StubFactory.Sharing.PER_CLASS) {
+            return instances != null ? instances.get(type) : null;
+        }
+        if (sharing == StubFactory.Sharing.POOLED && pools != null) {
+            Pool pool = pools.get(type);
+            return pool != null ? pool.next() : null;
+        }
+        return null;
+    }
+
+    /**
+     * @return if a new bean of the type can be generated: the type is not
+     * already on the path and the limits are not reached; when it cannot,
+     * {@link #substitute(Class)} is used instead
+     */
+    boolean canGenerate(Class<?> type) {
+        return (path != null ? path.size() : 0) < maxDepth && objects < maxObjects
+                && (pathTypes == null || !pathTypes.contains(type));
+    }
+
+    /**
+     * @return the value to use for a bean that cannot be generated: the
+     * ancestor of the same type (null if it is not instantiated yet), or,
+     * beyond the limits, null or the last instance of the type in the stub
+     */
+    Object substitute(Class<?> type) {
+        int ancestor = pathTypes != null ? pathTypes.lastIndexOf(type) : -1;
+        if (ancestor >= 0) {
+            return path.get(ancestor);
+        }
+        return limit == StubFactory.Limit.REUSE && instances != null ? instances.get(type) : null;
+    }
+
+    /**
+     * Called before a bean is instantiated; every call is followed by
+     * {@link #exit()}, once the bean is populated.
+     */
+    void enter(Class<?> type) {
+        if (path == null) {
+            pathTypes = new ArrayList<>();
+            path = new ArrayList<>();
+        }
+        pathTypes.add(type);
+        path.add(null);
+        objects++;
+    }
+
+    /**
+     * Makes the instantiated bean, which is being populated, available to
+     * its properties and to the next beans.
+     */
+    void register(Class<?> type, Object instance) {
+        path.set(path.size() - 1, instance);
+        if (instances == null) {
+            instances = new IdentityHashMap<>();
+        }
+        instances.put(type, instance);
+        if (sharing == StubFactory.Sharing.POOLED) {
+            if (pools == null) {
+                pools = new IdentityHashMap<>();
+            }
+            pools.computeIfAbsent(type, t -> new Pool(poolSize)).add(instance);
+        }
+    }
+
+    void exit() {
+        pathTypes.remove(pathTypes.size() - 1);
+        path.remove(path.size() - 1);
+    }
+
+    /**
+     * @return the interned value equal to the given one, if it is immutable
+     * and immutable values are interned, the value otherwise, which is then
+     * interned in place of the value with the same slot
+     */
+    Object intern(Object value) {
+        if (!internImmutables || value == null || !Values.isImmutable(value.getClass())) {
+            return value;
+        }
+        if (interned == null) {
+            interned = new Object[INTERNED_SLOTS];
+        }
+        int hash = value.hashCode();
+        int slot = (hash ^ hash >>> 16) & (INTERNED_SLOTS - 1);
+        Object previous = interned[slot];
+        if (previous != null && previous.equals(value)) {
+            return previous;
+        }
+        interned[slot] = value;
+        internedAny = true;
+        return value;
+    }
+
+    /**
+     * Forgets the interned values, so the next stubs do not share them with
+     * the previous ones.
+     */
+    void clearInterned() {
+        if (internedAny) {
+            Arrays.fill(interned, null);
+            internedAny = false;
+        }
+    }
+
+    /**
+     * The first instances of a type, then reused round-robin
+     */
+    private static final class Pool {
+        private final Object[] instances;
+        private int size;
+        private int next;
+
+        Pool(int capacity) {
+            this.instances = new Object[capacity];
+        }
+
+        void add(Object instance) {
+            if (size < instances.length) {
+                instances[size++] = instance;
+            }
+        }
+
+        /*null until the pool is full*/
+        Object next() {
+            if (size < instances.length) {
+                return null;
+            }
+            Object instance = instances[next];
+            next = (next + 1) % size;
+            return instance;
+        }
+    }
+}
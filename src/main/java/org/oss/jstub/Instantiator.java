@@ -0,0 +1,233 @@
+package org.oss.jstub;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * One way of getting an instance of a class whose {@link StubPlan} has no
+ * usable default constructor: a constructor with arguments, a static
+ * factory method, or a builder, which is a static method returning an
+ * object with fluent one argument methods and a {@code build()} method.
+ * <p>
+ * The candidates of a class are found and ranked once, when its plan is
+ * computed: those taking an argument of the class itself come last, as they
+ * can only get the instance being built, or null; then those with fewer
+ * arguments first, since every argument is a value to generate; then
+ * constructors before static factories before builders. They are called
+ * through method handles spreading an {@code Object[]} of arguments.
+ *
+ * @author nicu
+ */
+final class Instantiator {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final Comparator<Instantiator> RANKING = Comparator
+            .comparingInt((Instantiator instantiator) -> instantiator.selfReferences)
+            .thenComparingInt(instantiator -> instantiator.parameterTypes.length)
+            .thenComparing(instantiator -> instantiator.kind)
+            .thenComparing(instantiator -> instantiator.description);
+
+    enum Kind {
+        CONSTRUCTOR, FACTORY_METHOD, BUILDER
+    }
+
+    private final Kind kind;
+    private final String description;
+    private final Class<?>[] parameterTypes;
+    private final ResolvedType[] resolvedTypes;
+    private final int selfReferences;
+    /*(Object[])Object for constructors and factories, ()Object creating the builder for builders*/
+    private final MethodHandle handle;
+    /*(Object, Object)Object, null if not a builder*/
+    private final MethodHandle[] builderSetters;
+    /*(Object)Object, null if not a builder*/
+    private final MethodHandle build;
+
+    private Instantiator(Kind kind, Class<?> type, String description, Class<?>[] parameterTypes,
+                         ResolvedType[] resolvedTypes, MethodHandle handle, MethodHandle[] builderSetters,
+                         MethodHandle build) {
+        this.kind = kind;
+        this.description = description;
+        this.parameterTypes = parameterTypes;
+        this.resolvedTypes = resolvedTypes;
+        this.handle = handle;
+        this.builderSetters = builderSetters;
+        this.build = build;
+        int selfReferences = 0;
+        for (Class<?> parameterType : parameterTypes) {
+            if (parameterType == type) {
+                selfReferences++;
+            }
+        }
+        this.selfReferences = selfReferences;
+    }
+
+    /**
+     * @return the ways of instantiating the class, best first; only public
+     * constructors and methods unless {@code declared}, in which case those
+     * of any visibility that can be made accessible
+     */
+    static List<Instantiator> rank(Class<?> type, boolean declared) {
+        List<Instantiator> instantiators = new ArrayList<>();
+        if (!Modifier.isAbstract(type.getModifiers())) {
+            for (Constructor<?> constructor : type.getDeclaredConstructors()) {
+                if (isCandidate(constructor, declared)) {
+                    addIfAccessible(instantiators, type, Kind.CONSTRUCTOR, constructor);
+                }
+            }
+        }
+        for (Method method : type.getDeclaredMethods()) {
+            if (!isCandidate(method, declared) || !Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            if (type.isAssignableFrom(method.getReturnType())) {
+                addIfAccessible(instantiators, type, Kind.FACTORY_METHOD, method);
+            } else if (method.getParameterTypes().length == 0) {
+                addBuilder(instantiators, type, method);
+            }
+        }
+        instantiators.sort(RANKING);
+        return Collections.unmodifiableList(instantiators);
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    Class<?>[] getParameterTypes() {
+        return parameterTypes;
+    }
+
+    /**
+     * @return the type of the parameter at the given index, with its
+     * generics
+     */
+    ResolvedType getResolvedType(int index) {
+        return resolvedTypes[index];
+    }
+
+    /**
+     * @param arguments values for the parameter types, for builders the
+     *                  arguments of their fluent methods
+     */
+    Object newInstance(Object[] arguments) throws Throwable {
+        if (builderSetters == null) {
+            return handle.invokeExact(arguments);
+        }
+        Object builder = handle.invokeExact();
+        for (int i = 0; i < builderSetters.length; i++) {
+            Object next = builderSetters[i].invokeExact(builder, arguments[i]);
+            if (next != null) {
+                builder = next;
+            }
+        }
+        return build.invokeExact(builder);
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+
+    private static void addIfAccessible(List<Instantiator> instantiators, Class<?> type, Kind kind,
+                                        Executable executable) {
+        MethodHandle handle = unreflect(executable);
+        if (handle == null) {
+            return;
+        }
+        Class<?>[] parameterTypes = executable.getParameterTypes();
+        handle = handle.asSpreader(Object[].class, parameterTypes.length)
+                .asType(MethodType.methodType(Object.class, Object[].class));
+        instantiators.add(new Instantiator(kind, type, executable.toString(), parameterTypes,
+                resolvedTypes(type, executable), handle, null, null));
+    }
+
+    private static void addBuilder(List<Instantiator> instantiators, Class<?> type, Method builderMethod) {
+        Class<?> builderType = builderMethod.getReturnType();
+        Method buildMethod;
+        try {
+            buildMethod = builderType.getMethod("build");
+        } catch (NoSuchMethodException e) {
+            return;
+        }
+        if (!type.isAssignableFrom(buildMethod.getReturnType())) {
+            return;
+        }
+        List<Method> setters = new ArrayList<>();
+        for (Method method : builderType.getMethods()) {
+            if (!Modifier.isStatic(method.getModifiers()) && method.getParameterTypes().length == 1
+                    && builderType.isAssignableFrom(method.getReturnType()) && !method.isBridge()) {
+                setters.add(method);
+            }
+        }
+        setters.sort(Comparator.comparing(Method::toString));
+        MethodHandle handle = unreflect(builderMethod);
+        MethodHandle build = unreflect(buildMethod);
+        if (handle == null || build == null) {
+            return;
+        }
+        MethodHandle[] builderSetters = new MethodHandle[setters.size()];
+        Class<?>[] parameterTypes = new Class<?>[setters.size()];
+        ResolvedType[] resolvedTypes = new ResolvedType[setters.size()];
+        for (int i = 0; i < builderSetters.length; i++) {
+            Method setter = setters.get(i);
+            MethodHandle setterHandle = unreflect(setter);
+            if (setterHandle == null) {
+                return;
+            }
+            builderSetters[i] = setterHandle.asType(MethodType.methodType(Object.class,
+                    Object.class, Object.class));
+            parameterTypes[i] = setter.getParameterTypes()[0];
+            resolvedTypes[i] = ResolvedType.of(setter.getGenericParameterTypes()[0], builderType);
+        }
+        instantiators.add(new Instantiator(Kind.BUILDER, type, builderMethod.toString(), parameterTypes,
+                resolvedTypes, handle.asType(MethodType.methodType(Object.class)), builderSetters,
+                build.asType(MethodType.methodType(Object.class, Object.class))));
+    }
+
+    private static boolean isCandidate(Executable executable, boolean declared) {
+        return !executable.isSynthetic() && (declared || Modifier.isPublic(executable.getModifiers()));
+    }
+
+    private static ResolvedType[] resolvedTypes(Class<?> type, Executable executable) {
+        Type[] types = executable.getGenericParameterTypes();
+        if (types.length != executable.getParameterCount()) {
+            // like the outer instance of inner classes, not in the generic signature
+            types = executable.getParameterTypes();
+        }
+        ResolvedType[] resolvedTypes = new ResolvedType[types.length];
+        for (int i = 0; i < types.length; i++) {
+            resolvedTypes[i] = ResolvedType.of(types[i], type);
+        }
+        return resolvedTypes;
+    }
+
+    private static MethodHandle unreflect(Executable executable) {
+        makeAccessible(executable);
+        try {
+            return executable instanceof Constructor
+                    ? LOOKUP.unreflectConstructor((Constructor<?>) executable)
+                    : LOOKUP.unreflect((Method) executable);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    private static void makeAccessible(AccessibleObject member) {
+        try {
+            member.setAccessible(true);
+        } catch (RuntimeException e) {
+            // unreflect tells if it is really not accessible
+        }
+    }
+}
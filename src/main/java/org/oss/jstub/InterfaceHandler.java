@@ -1,9 +1,15 @@
 package org.oss.jstub;
 
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class is used to stub fields that are of interface type. Because Java
@@ -11,27 +17,177 @@ import java.lang.reflect.Type;
  * classes that implement a given interface, interface fields are going to be
  * implemented with proxies of that interface, and the return type of each
  * method is going to be stubbed.
+ * <p>
+ * Every factory has its own handler, so the values returned by the proxies
+ * honour the custom values of the factory. By default a new value is stubbed
+ * on every call; with memoization each proxy stubs the result of a method
+ * and arguments once and then keeps returning it, optionally keeping only
+ * the most recently used results.
+ * <p>
+ * Every proxy gets a seed from the generation that creates it, and each
+ * value is stubbed from a fork of that seed keyed by the method and by the
+ * number of values already stubbed for it, so the proxies of a seeded
+ * factory are reproducible without returning the same value every time.
+ * <p>
+ * The proxy constructor and the return types of the methods are computed
+ * once per interface and shared by all the factories.
  *
  * @author nicu
  */
-class InterfaceHandler implements InvocationHandler {
-    private static StubFactory stubFactory = StubFactory.get();
-    private static InvocationHandler invocationHandler = new InterfaceHandler();
+class InterfaceHandler {
+    /*no memoization, a new value on every call*/
+    static final int NOT_MEMOIZED = 0;
+    /*memoization without a bound on the number of results*/
+    static final int UNBOUNDED = Integer.MAX_VALUE;
 
+    private static final ClassValue<Constructor<?>> PROXY_CONSTRUCTORS = new ClassValue<Constructor<?>>() {
+        @Override
+        @SuppressWarnings("deprecation")// Java 8 has no other way to get the class
+        protected Constructor<?> computeValue(Class<?> type) {
+            try {
+                return Proxy.getProxyClass(type.getClassLoader(), type)
+                        .getConstructor(InvocationHandler.class);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException("Proxy class without handler constructor", e);
+            }
+        }
+    };
+    /*methods of the proxy (including those of Object) to their return type*/
+    private static final ClassValue<Map<Method, ReturnType>> RETURN_TYPES =
+            new ClassValue<Map<Method, ReturnType>>() {
+                @Override
+                protected Map<Method, ReturnType> computeValue(Class<?> type) {
+                    return new ConcurrentHashMap<>();
+                }
+            };
+
+    private final StubFactory stubFactory;
+    private final int memoizedResults;
+
+    InterfaceHandler(StubFactory stubFactory, int memoizedResults) {
+        this.stubFactory = stubFactory;
+        this.memoizedResults = memoizedResults;
+    }
+
+    /**
+     * @param seed from which all the values of the proxy are forked
+     */
     @SuppressWarnings("unchecked")
-    <T> T createProxyStub(Class<T> cls) {
-        return (T) Proxy.newProxyInstance(this.getClass().getClassLoader(),
-                new Class<?>[]{cls}, invocationHandler);
+    <T> T createProxyStub(Class<T> cls, long seed) {
+        InvocationHandler handler = memoizedResults == NOT_MEMOIZED
+                ? new StubbingHandler(seed) : new MemoizingHandler(seed);
+        try {
+            return (T) PROXY_CONSTRUCTORS.get(cls).newInstance(handler);
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalArgumentException("Cannot create proxy of interface " + cls.getName(), e);
+        }
+    }
+
+    private static ReturnType returnType(Object proxy, Method method) {
+        return RETURN_TYPES.get(proxy.getClass()).computeIfAbsent(method, ReturnType::new);
     }
 
-    @Override
-    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-        Class<?> returnType = method.getReturnType();
-        if ("void".equals(returnType.getName()) || "java.lang.Void".equals(returnType.getName())) {
-            return null;
+    /**
+     * Handler of a single proxy, which stubs a new value on every call
+     */
+    private class StubbingHandler implements InvocationHandler {
+        /*only forked, which does not change it, so it can be shared by threads*/
+        private final RandomGenerator seeds;
+        private final Map<Method, long[]> calls = new HashMap<>();
+
+        StubbingHandler(long seed) {
+            this.seeds = new RandomGenerator(seed);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            ReturnType returnType = returnType(proxy, method);
+            return returnType.isVoid() ? null : stub(returnType, method);
+        }
+
+        Object stub(ReturnType returnType, Method method) {
+            long call;
+            synchronized (calls) {
+                call = calls.computeIfAbsent(method, m -> new long[1])[0]++;
+            }
+            return stubFactory.createStub(returnType.type, seeds.forkSeed(((long) returnType.key << 32) ^ call));
+        }
+    }
+
+    /**
+     * Handler of a single proxy, which stubs the result of each method and
+     * arguments only once
+     */
+    private final class MemoizingHandler extends StubbingHandler {
+        private final Map<MethodCall, Object> results = new LinkedHashMap<MethodCall, Object>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<MethodCall, Object> eldest) {
+                return size() > memoizedResults;
+            }
+        };
+
+        MemoizingHandler(long seed) {
+            super(seed);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            ReturnType returnType = returnType(proxy, method);
+            if (returnType.isVoid()) {
+                return null;
+            }
+            MethodCall call = new MethodCall(method, args);
+            synchronized (results) {
+                Object result = results.get(call);
+                if (result != null) {
+                    return result;
+                }
+            }
+            // stubbed outside of the lock, the first result stored wins
+            Object result = stub(returnType, method);
+            synchronized (results) {
+                Object previous = results.putIfAbsent(call, result);
+                return previous != null ? previous : result;
+            }
+        }
+    }
+
+    private static final class ReturnType {
+        private final ResolvedType type;
+        /*identifies the method in the seeds of its values, the same in every run*/
+        private final int key;
+
+        ReturnType(Method method) {
+            this.type = ResolvedType.of(method.getGenericReturnType(), method.getDeclaringClass());
+            this.key = method.toString().hashCode();
+        }
+
+        boolean isVoid() {
+            return type.getType() == void.class || type.getType() == Void.class;
+        }
+    }
+
+    private static final class MethodCall {
+        private final Method method;
+        private final Object[] args;
+
+        MethodCall(Method method, Object[] args) {
+            this.method = method;
+            this.args = args;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof MethodCall)) {
+                return false;
+            }
+            MethodCall other = (MethodCall) o;
+            return method.equals(other.method) && Arrays.deepEquals(args, other.args);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * method.hashCode() + Arrays.deepHashCode(args);
         }
-        Type genericType = method.getGenericReturnType();
-        Class<?>[] genericTypes = stubFactory.getGenericTypes(genericType);
-        return stubFactory.createStub(returnType, genericTypes);
     }
 }
@@ -0,0 +1,172 @@
+package org.oss.jstub;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A class generated at runtime that implements an interface like a plain
+ * bean: every abstract method returning a value gets a public field, and
+ * returns it, whatever its arguments; void methods do nothing. The fields are
+ * set by {@link StubFactory} when the stub is created, so calling the stub
+ * needs neither a proxy nor reflection.
+ * <p>
+ * Only public interfaces, whose abstract methods with the same signature all
+ * return the same type, can be implemented; {@link #of(Class)} returns null
+ * for the others, which are stubbed with proxies instead. Each class lives in
+ * its own class loader, so it can be unloaded with the interface.
+ *
+ * @author nicu
+ */
+final class InterfaceImplementation<T> {
+    private static final String PACKAGE = "org/oss/jstub/generated/";
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final ClassValue<InterfaceImplementation<?>> IMPLEMENTATIONS =
+            new ClassValue<InterfaceImplementation<?>>() {
+                @Override
+                protected InterfaceImplementation<?> computeValue(Class<?> type) {
+                    return generate(type);
+                }
+            };
+    /*marks the interfaces that cannot be implemented, ClassValue needs a value*/
+    private static final InterfaceImplementation<?> NONE = new InterfaceImplementation<>(null, null, null);
+
+    private final Class<T> type;
+    private final MethodHandle constructor;
+    private final List<Slot> slots;
+
+    private InterfaceImplementation(Class<T> type, MethodHandle constructor, List<Slot> slots) {
+        this.type = type;
+        this.constructor = constructor;
+        this.slots = slots;
+    }
+
+    /**
+     * @return the implementation of the interface, generated on the first
+     * call, or null if it cannot be implemented
+     */
+    @SuppressWarnings("unchecked")
+    static <T> InterfaceImplementation<T> of(Class<T> type) {
+        InterfaceImplementation<?> implementation = IMPLEMENTATIONS.get(type);
+        return implementation == NONE ? null : (InterfaceImplementation<T>) implementation;
+    }
+
+    /**
+     * @return if the class is the implementation generated for an interface
+     */
+    static boolean isImplementation(Class<?> cls) {
+        return ClassFileWriter.isGenerated(cls) && cls.getName().endsWith("$Stub")
+                && cls.getInterfaces().length == 1 && of(cls.getInterfaces()[0]) != null;
+    }
+
+    Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * @return new instance with all the fields unset
+     */
+    @SuppressWarnings("unchecked")
+    T newInstance() {
+        try {
+            return (T) constructor.invokeExact();
+        } catch (Throwable t) {
+            throw new IllegalArgumentException("Cannot instantiate implementation of " + type.getName(), t);
+        }
+    }
+
+    List<Slot> getSlots() {
+        return slots;
+    }
+
+    private static InterfaceImplementation<?> generate(Class<?> type) {
+        if (!Modifier.isPublic(type.getModifiers())) {
+            return NONE;
+        }
+        Map<String, Method> methods = new HashMap<>();
+        for (Method method : type.getMethods()) {
+            if (!Modifier.isAbstract(method.getModifiers())) {
+                continue;
+            }
+            String signature = method.getName() + ClassFileWriter.descriptor(void.class, method.getParameterTypes());
+            Method other = methods.putIfAbsent(signature, method);
+            if (other != null && other.getReturnType() != method.getReturnType()) {
+                return NONE;// covariant returns, would need bridge methods
+            }
+        }
+        String name = PACKAGE + type.getName().replace('.', '_') + "$Stub";
+        ClassFileWriter writer = new ClassFileWriter(name, "java/lang/Object",
+                ClassFileWriter.internalName(type));
+        writer.method(ClassFileWriter.ACC_PUBLIC, "<init>", "()V")
+                .loadThis()
+                .invokeSpecial("java/lang/Object", "<init>", "()V")
+                .returnValue(void.class);
+        List<Method> valueMethods = new ArrayList<>();
+        for (Method method : methods.values()) {
+            Class<?> returnType = method.getReturnType();
+            ClassFileWriter.Code code = writer.method(ClassFileWriter.ACC_PUBLIC, method.getName(),
+                    ClassFileWriter.descriptor(method));
+            if (returnType != void.class) {
+                String field = "value" + valueMethods.size();
+                String descriptor = ClassFileWriter.descriptor(returnType);
+                writer.field(ClassFileWriter.ACC_PUBLIC, field, descriptor);
+                code.loadThis().getField(name, field, descriptor);
+                valueMethods.add(method);
+            }
+            code.returnValue(returnType);
+        }
+        try {
+            // verified now, so that an invalid class falls back to proxies
+            Class<?> implementation = writer.define(type.getClassLoader());
+            List<Slot> slots = new ArrayList<>(valueMethods.size());
+            for (int i = 0; i < valueMethods.size(); i++) {
+                slots.add(new Slot(valueMethods.get(i), implementation.getField("value" + i)));
+            }
+            MethodHandle constructor = LOOKUP.findConstructor(implementation, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+            return new InterfaceImplementation<>(type, constructor, Collections.unmodifiableList(slots));
+        } catch (LinkageError | ReflectiveOperationException e) {
+            return NONE;// like a return type not visible from the interface's loader
+        }
+    }
+
+    /**
+     * The value returned by one method of the interface
+     */
+    static final class Slot {
+        private final ResolvedType type;
+        private final MethodHandle setter;
+
+        private Slot(Method method, Field field) throws IllegalAccessException {
+            this.type = ResolvedType.of(method.getGenericReturnType(), method.getDeclaringClass());
+            this.setter = LOOKUP.unreflectSetter(field)
+                    .asType(MethodType.methodType(void.class, Object.class, Object.class));
+        }
+
+        Class<?> getType() {
+            return type.getType();
+        }
+
+        ResolvedType getResolvedType() {
+            return type;
+        }
+
+        void set(Object object, Object value) {
+            try {
+                setter.invokeExact(object, value);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalArgumentException(t);
+            }
+        }
+    }
+}
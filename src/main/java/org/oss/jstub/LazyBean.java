@@ -0,0 +1,357 @@
+package org.oss.jstub;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * The beans of {@link StubFactory.CustomValuesBuilder#lazyBeans()}: instances
+ * of a subclass generated at runtime, whose getters generate the value of
+ * their property the first time one of them is called, and then return what
+ * the getter of the bean returns. Calling the setter first keeps the value
+ * set; {@code equals}, {@code hashCode} and {@code toString}, when the class
+ * overrides them, generate all the properties first.
+ * <p>
+ * The generated methods only call the loader of the instance with the index
+ * of their property (its complement for setters) and then the method of the
+ * bean, so the subclass needs no branches. The loader populates the slots of
+ * the property from the {@link StubPlan}, in a generation of their own,
+ * seeded by the index of the property, so the values do not depend on the
+ * order the getters are called in.
+ * <p>
+ * Only public, non final classes with a public or protected default
+ * constructor can be subclassed, and only the properties with a public, non
+ * final getter are generated lazily; {@link #of(StubPlan)} returns
+ * {@link #NONE} for the plans without any, which are populated right away.
+ * The subclasses are generated once per class, each in its own class loader.
+ * Code that picks the plan of a bean from its class, like snapshots, goes
+ * through {@link #beanClass(Object)}, which generates all the properties and
+ * returns the class of the bean instead of the subclass.
+ *
+ * @author nicu
+ */
+final class LazyBean<T> {
+    /*the plans whose beans are populated right away*/
+    static final LazyBean<?> NONE = new LazyBean<>(null, null, null, null);
+
+    private static final String PACKAGE = "org/oss/jstub/generated/";
+    private static final String SUFFIX = "$Lazy";
+    private static final String LOADER = "loader";
+    private static final String LOADER_TYPE = ClassFileWriter.internalName(IntConsumer.class);
+    /*given to the loader by equals, hashCode and toString*/
+    private static final int ALL = Integer.MIN_VALUE;
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final ClassValue<Subclass> SUBCLASSES = new ClassValue<Subclass>() {
+        @Override
+        protected Subclass computeValue(Class<?> type) {
+            return generate(type);
+        }
+    };
+    /*marks the classes that cannot be subclassed, ClassValue needs a value*/
+    private static final Subclass NO_SUBCLASS = new Subclass(null, null, null, null);
+
+    private final StubPlan<T> plan;
+    private final Subclass subclass;
+    /*the slots of every property of the subclass, by index*/
+    private final List<List<StubPlan.Slot>> lazySlots;
+    private final List<StubPlan.Slot> eagerSlots;
+
+    private LazyBean(StubPlan<T> plan, Subclass subclass, List<List<StubPlan.Slot>> lazySlots,
+                     List<StubPlan.Slot> eagerSlots) {
+        this.plan = plan;
+        this.subclass = subclass;
+        this.lazySlots = lazySlots;
+        this.eagerSlots = eagerSlots;
+    }
+
+    /**
+     * @return how the beans of the plan are created lazily, or {@link #NONE}
+     * if they cannot be
+     */
+    static <T> LazyBean<?> of(StubPlan<T> plan) {
+        if (plan.getInstantiation() != StubPlan.Instantiation.DEFAULT_CONSTRUCTOR) {
+            return NONE;
+        }
+        Subclass subclass = SUBCLASSES.get(plan.getType());
+        if (subclass == NO_SUBCLASS) {
+            return NONE;
+        }
+        List<List<StubPlan.Slot>> lazySlots = new ArrayList<>(subclass.properties.size());
+        for (int i = 0; i < subclass.properties.size(); i++) {
+            lazySlots.add(new ArrayList<>(1));
+        }
+        List<StubPlan.Slot> eagerSlots = new ArrayList<>();
+        boolean lazy = false;
+        for (StubPlan.Slot slot : plan.getSlots()) {
+            Integer property = subclass.properties.get(slot.getPropertyName());
+            if (property != null) {
+                lazySlots.get(property).add(slot);
+                lazy = true;
+            } else {
+                eagerSlots.add(slot);
+            }
+        }
+        return lazy ? new LazyBean<>(plan, subclass, lazySlots, Collections.unmodifiableList(eagerSlots)) : NONE;
+    }
+
+    /**
+     * @param root forked for the generation of every property
+     * @return new instance with the lazy properties not generated yet
+     */
+    @SuppressWarnings("unchecked")
+    T newInstance(StubFactory factory, RandomGenerator root) {
+        Loader loader = new Loader(factory, this, root);
+        T bean;
+        try {
+            bean = (T) subclass.constructor.invokeExact((IntConsumer) loader);
+        } catch (Throwable t) {
+            throw new IllegalArgumentException("Cannot instantiate lazy subclass of "
+                    + plan.getType().getName(), t);
+        }
+        loader.attach(bean);
+        return bean;
+    }
+
+    /**
+     * @return the class of the bean, or for an instance of a lazy subclass,
+     * the class it extends, once all its properties are generated
+     */
+    static Class<?> beanClass(Object bean) {
+        Class<?> type = bean.getClass();
+        if (!ClassFileWriter.isGenerated(type) || !type.getName().endsWith(SUFFIX)) {
+            return type;
+        }
+        Subclass subclass = SUBCLASSES.get(type.getSuperclass());
+        if (subclass.type != type) {
+            return type;
+        }
+        try {
+            ((IntConsumer) subclass.loader.invokeExact(bean)).accept(ALL);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Cannot load the properties of " + type.getName(), t);
+        }
+        return type.getSuperclass();
+    }
+
+    /**
+     * @return the slots without a getter to generate them, to be populated
+     * when the bean is created
+     */
+    List<StubPlan.Slot> getEagerSlots() {
+        return eagerSlots;
+    }
+
+    private static Subclass generate(Class<?> type) {
+        int modifiers = type.getModifiers();
+        if (!Modifier.isPublic(modifiers) || Modifier.isFinal(modifiers) || Modifier.isAbstract(modifiers)
+                || type.isInterface() || type.isArray() || type.isPrimitive() || type.isEnum()) {
+            return NO_SUBCLASS;
+        }
+        try {
+            Constructor<?> constructor = type.getDeclaredConstructor();
+            if (!Modifier.isPublic(constructor.getModifiers()) && !Modifier.isProtected(constructor.getModifiers())) {
+                return NO_SUBCLASS;
+            }
+        } catch (NoSuchMethodException e) {
+            return NO_SUBCLASS;
+        }
+        Map<String, Integer> properties = new LinkedHashMap<>();
+        List<Method> getters = new ArrayList<>();
+        for (Method method : type.getMethods()) {
+            if (isOverridable(method) && isGetter(method)) {
+                properties.putIfAbsent(propertyName(method), properties.size());
+                getters.add(method);
+            }
+        }
+        if (properties.isEmpty()) {
+            return NO_SUBCLASS;
+        }
+        String name = PACKAGE + type.getName().replace('.', '_') + SUFFIX;
+        String superName = ClassFileWriter.internalName(type);
+        String loaderDescriptor = "L" + LOADER_TYPE + ";";
+        ClassFileWriter writer = new ClassFileWriter(name, superName);
+        // public, for beanClass to load all the properties
+        writer.field(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_FINAL, LOADER, loaderDescriptor);
+        // the loader is set before the bean constructor, which may call the overridden methods
+        writer.method(ClassFileWriter.ACC_PUBLIC, "<init>", "(" + loaderDescriptor + ")V")
+                .loadThis()
+                .load(IntConsumer.class, 1)
+                .putField(name, LOADER, loaderDescriptor)
+                .loadThis()
+                .invokeSpecial(superName, "<init>", "()V")
+                .returnValue(void.class);
+        for (Method getter : getters) {
+            override(writer, name, superName, getter, properties.get(propertyName(getter)));
+        }
+        for (Method method : type.getMethods()) {
+            if (!isOverridable(method)) {
+                continue;
+            }
+            if (isSetter(method) && properties.containsKey(propertyName(method))) {
+                override(writer, name, superName, method, ~properties.get(propertyName(method)));
+            } else if (isObjectMethod(method)) {
+                override(writer, name, superName, method, ALL);
+            }
+        }
+        try {
+            Class<?> subclass = writer.define(type.getClassLoader());
+            MethodHandle constructor = LOOKUP.findConstructor(subclass,
+                    MethodType.methodType(void.class, IntConsumer.class))
+                    .asType(MethodType.methodType(Object.class, IntConsumer.class));
+            MethodHandle loader = LOOKUP.findGetter(subclass, LOADER, IntConsumer.class)
+                    .asType(MethodType.methodType(IntConsumer.class, Object.class));
+            return new Subclass(subclass, constructor, loader, Collections.unmodifiableMap(new HashMap<>(properties)));
+        } catch (LinkageError | ReflectiveOperationException e) {
+            return NO_SUBCLASS;// like a class not accessible from another package
+        }
+    }
+
+    /*loader.accept(property); return super.method(arguments);*/
+    private static void override(ClassFileWriter writer, String name, String superName, Method method,
+                                 int property) {
+        String descriptor = ClassFileWriter.descriptor(method);
+        ClassFileWriter.Code code = writer.method(ClassFileWriter.ACC_PUBLIC, method.getName(), descriptor)
+                .loadThis()
+                .getField(name, LOADER, "L" + LOADER_TYPE + ";")
+                .pushInt(property)
+                .invokeInterface(LOADER_TYPE, "accept", "(I)V")
+                .loadThis();
+        int local = 1;
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            code.load(parameterType, local);
+            local += parameterType == long.class || parameterType == double.class ? 2 : 1;
+        }
+        code.invokeSpecial(superName, method.getName(), descriptor)
+                .returnValue(method.getReturnType());
+    }
+
+    private static boolean isOverridable(Method method) {
+        int modifiers = method.getModifiers();
+        return !Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers) && !Modifier.isAbstract(modifiers)
+                && !method.isBridge() && !method.isSynthetic();
+    }
+
+    private static boolean isGetter(Method method) {
+        String name = method.getName();
+        if (method.getParameterTypes().length != 0 || method.getDeclaringClass() == Object.class) {
+            return false;
+        }
+        return name.startsWith("get") && name.length() > 3 && method.getReturnType() != void.class
+                || name.startsWith("is") && name.length() > 2 && method.getReturnType() == boolean.class;
+    }
+
+    private static boolean isSetter(Method method) {
+        return method.getName().startsWith("set") && method.getName().length() > 3
+                && method.getParameterTypes().length == 1;
+    }
+
+    private static boolean isObjectMethod(Method method) {
+        if (method.getDeclaringClass() == Object.class) {
+            return false;// they do not read the properties
+        }
+        String name = method.getName();
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        return name.equals("equals") && parameterTypes.length == 1 && parameterTypes[0] == Object.class
+                || (name.equals("hashCode") || name.equals("toString")) && parameterTypes.length == 0;
+    }
+
+    private static String propertyName(Method method) {
+        String name = method.getName();
+        return StubPlan.Slot.propertyName(name.startsWith("is") ? "get" + name.substring(2) : name);
+    }
+
+    /**
+     * The subclass generated for a bean class
+     */
+    private static final class Subclass {
+        private final Class<?> type;
+        /*(IntConsumer)Object*/
+        private final MethodHandle constructor;
+        /*(Object)IntConsumer, reads the loader of an instance*/
+        private final MethodHandle loader;
+        /*index of every property with a getter, by name*/
+        private final Map<String, Integer> properties;
+
+        Subclass(Class<?> type, MethodHandle constructor, MethodHandle loader, Map<String, Integer> properties) {
+            this.type = type;
+            this.constructor = constructor;
+            this.loader = loader;
+            this.properties = properties;
+        }
+    }
+
+    /**
+     * Generates the properties of one bean, each at most once; the bean
+     * methods called while its properties are generated, or while it is
+     * being constructed, find nothing to generate.
+     */
+    private static final class Loader implements IntConsumer {
+        private final StubFactory factory;
+        private final LazyBean<?> lazyBean;
+        private final RandomGenerator root;
+        private final boolean[] loaded;
+        /*number of properties not loaded, read without locking once all are*/
+        private volatile int pending;
+        private Object bean;
+
+        Loader(StubFactory factory, LazyBean<?> lazyBean, RandomGenerator root) {
+            this.factory = factory;
+            this.lazyBean = lazyBean;
+            this.root = root;
+            this.loaded = new boolean[lazyBean.lazySlots.size()];
+            int pending = 0;
+            for (int i = 0; i < loaded.length; i++) {
+                loaded[i] = lazyBean.lazySlots.get(i).isEmpty();
+                pending += loaded[i] ? 0 : 1;
+            }
+            this.pending = pending;
+        }
+
+        synchronized void attach(Object bean) {
+            this.bean = bean;
+        }
+
+        @Override
+        public void accept(int property) {
+            if (pending == 0) {
+                return;
+            }
+            synchronized (this) {
+                if (bean == null) {
+                    return;
+                }
+                if (property == ALL) {
+                    for (int i = 0; i < loaded.length; i++) {
+                        load(i, true);
+                    }
+                } else if (property < 0) {
+                    load(~property, false);
+                } else {
+                    load(property, true);
+                }
+            }
+        }
+
+        private void load(int property, boolean generate) {
+            if (loaded[property]) {
+                return;
+            }
+            loaded[property] = true;
+            pending--;
+            if (generate) {
+                factory.populateLazily(lazyBean.plan, bean, lazyBean.lazySlots.get(property),
+                        root.forkSeed(property));
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package org.oss.jstub;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+/**
+ * The virtual collections of {@link StubFactory.CustomValuesBuilder#lazyCollections()}:
+ * the element at an index is generated the first time it is read, by a
+ * function of the index only, and kept; the others cost a null reference
+ * each. Several threads may generate the same element, the first one stored
+ * is the one every reader gets.
+ * <p>
+ * Lists have a fixed size, like {@link java.util.Arrays#asList}: elements
+ * can be replaced, not added or removed. The keys of maps are given, since
+ * the size and lookups of a map depend on all of them; their values are
+ * generated lazily. Maps cannot be modified.
+ *
+ * @author nicu
+ */
+final class LazyCollections {
+    /*stored for generated nulls, to tell them from the elements not generated yet*/
+    private static final Object NULL = new Object();
+
+    private LazyCollections() {
+    }
+
+    static List<Object> list(int size, IntFunction<Object> elements) {
+        return new LazyList(size, elements);
+    }
+
+    /**
+     * @param keys   distinct keys, in the order of the entries
+     * @param values generates the value of the key at the given index
+     */
+    static Map<Object, Object> map(Object[] keys, IntFunction<Object> values) {
+        return new LazyMap(keys, values);
+    }
+
+    private static final class Elements {
+        private final AtomicReferenceArray<Object> elements;
+        private final IntFunction<Object> generator;
+
+        Elements(int size, IntFunction<Object> generator) {
+            this.elements = new AtomicReferenceArray<>(size);
+            this.generator = generator;
+        }
+
+        Object get(int index) {
+            Object element = elements.get(index);
+            if (element == null) {
+                Object generated = generator.apply(index);
+                element = elements.compareAndSet(index, null, generated != null ? generated : NULL)
+                        ? generated : elements.get(index);
+            }
+            return element == NULL ? null : element;
+        }
+
+        Object set(int index, Object element) {
+            Object previous = get(index);
+            elements.set(index, element != null ? element : NULL);
+            return previous;
+        }
+    }
+
+    private static final class LazyList extends AbstractList<Object> implements RandomAccess {
+        private final Elements elements;
+        private final int size;
+
+        LazyList(int size, IntFunction<Object> generator) {
+            this.elements = new Elements(size, generator);
+            this.size = size;
+        }
+
+        @Override
+        public Object get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " of " + size);
+            }
+            return elements.get(index);
+        }
+
+        @Override
+        public Object set(int index, Object element) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " of " + size);
+            }
+            return elements.set(index, element);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    private static final class LazyMap extends AbstractMap<Object, Object> {
+        private final Object[] keys;
+        private final Map<Object, Integer> indexes;
+        private final Elements values;
+
+        LazyMap(Object[] keys, IntFunction<Object> generator) {
+            this.keys = keys;
+            this.indexes = new HashMap<>(keys.length * 4 / 3 + 1);
+            for (int i = 0; i < keys.length; i++) {
+                indexes.put(keys[i], i);
+            }
+            this.values = new Elements(keys.length, generator);
+        }
+
+        @Override
+        public Object get(Object key) {
+            Integer index = indexes.get(key);
+            return index != null ? values.get(index) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return indexes.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return keys.length;
+        }
+
+        @Override
+        public Set<Object> keySet() {
+            return Collections.unmodifiableSet(indexes.keySet());
+        }
+
+        @Override
+        public Set<Entry<Object, Object>> entrySet() {
+            return new AbstractSet<Entry<Object, Object>>() {
+                @Override
+                public Iterator<Entry<Object, Object>> iterator() {
+                    return new Iterator<Entry<Object, Object>>() {
+                        private int index;
+
+                        @Override
+                        public boolean hasNext() {
+                            return index < keys.length;
+                        }
+
+                        @Override
+                        public Entry<Object, Object> next() {
+                            if (index >= keys.length) {
+                                throw new NoSuchElementException();
+                            }
+                            int i = index++;
+                            return new SimpleImmutableEntry<>(keys[i], values.get(i));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return keys.length;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package org.oss.jstub;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.function.BiConsumer;
+
+/**
+ * Typed generators and setters for the primitive types, so that generated
+ * primitive values go from {@link RandomGenerator} to the bean setters and
+ * arrays without being boxed or passed through reflection.
+ *
+ * @author nicu
+ */
+final class PrimitiveGenerators {
+    static final BooleanGenerator BOOLEAN = RandomGenerator::nextBoolean;
+    static final ByteGenerator BYTE = RandomGenerator::nextByte;
+    static final CharGenerator CHAR = RandomGenerator::nextChar;
+    static final ShortGenerator SHORT = RandomGenerator::nextShort;
+    static final IntGenerator INT = RandomGenerator::nextInt;
+    static final LongGenerator LONG = RandomGenerator::nextLong;
+    static final FloatGenerator FLOAT = RandomGenerator::nextFloat;
+    static final DoubleGenerator DOUBLE = RandomGenerator::nextDouble;
+
+    private PrimitiveGenerators() {
+    }
+
+    /**
+     * Creates the function that sets a generated value through the given
+     * setter of a primitive property. The setter is spun with
+     * {@link AccessorFactory} for the matching typed setter interface; when
+     * that is not possible the value is boxed and set like any other value.
+     */
+    static Filler filler(Method setter) {
+        Class<?> type = setter.getParameterTypes()[0];
+        Object typed = AccessorFactory.DEFAULT.typedSetter(setter, setterInterface(type));
+        BiConsumer<Object, Object> boxed = typed == null ? AccessorFactory.DEFAULT.setter(setter) : null;
+        return filler(type, typed, boxed, setter);
+    }
+
+    /**
+     * Creates the function that sets a generated value into the given
+     * primitive field, which must be accessible. The field has no method to
+     * spin a typed setter for, so the typed setter calls the
+     * {@link AccessorFactory#setterHandle(Field)} of the field, which does not
+     * box the value either.
+     */
+    static Filler filler(Field field) {
+        return filler(field.getType(), typedSetter(field), null, field);
+    }
+
+    private static Filler filler(Class<?> type, Object typed, BiConsumer<Object, Object> boxed, Member member) {
+        if (type == boolean.class) {
+            BooleanSetter booleanSetter = typed != null ? (BooleanSetter) typed : boxed::accept;
+            return (object, random) -> booleanSetter.set(object, BOOLEAN.next(random));
+        } else if (type == byte.class) {
+            ByteSetter byteSetter = typed != null ? (ByteSetter) typed : boxed::accept;
+            return (object, random) -> byteSetter.set(object, BYTE.next(random));
+        } else if (type == char.class) {
+            CharSetter charSetter = typed != null ? (CharSetter) typed : boxed::accept;
+            return (object, random) -> charSetter.set(object, CHAR.next(random));
+        } else if (type == short.class) {
+            ShortSetter shortSetter = typed != null ? (ShortSetter) typed : boxed::accept;
+            return (object, random) -> shortSetter.set(object, SHORT.next(random));
+        } else if (type == int.class) {
+            IntSetter intSetter = typed != null ? (IntSetter) typed : boxed::accept;
+            return (object, random) -> intSetter.set(object, INT.next(random));
+        } else if (type == long.class) {
+            LongSetter longSetter = typed != null ? (LongSetter) typed : boxed::accept;
+            return (object, random) -> longSetter.set(object, LONG.next(random));
+        } else if (type == float.class) {
+            FloatSetter floatSetter = typed != null ? (FloatSetter) typed : boxed::accept;
+            return (object, random) -> floatSetter.set(object, FLOAT.next(random));
+        } else if (type == double.class) {
+            DoubleSetter doubleSetter = typed != null ? (DoubleSetter) typed : boxed::accept;
+            return (object, random) -> doubleSetter.set(object, DOUBLE.next(random));
+        }
+        throw new IllegalArgumentException("Not a primitive setter or field: " + member);
+    }
+
+    /*the typed setter interface of the field type, implemented with the handle of the field*/
+    private static Object typedSetter(Field field) {
+        Class<?> type = field.getType();
+        if (!type.isPrimitive() || type == void.class) {
+            throw new IllegalArgumentException("Not a primitive setter or field: " + field);
+        }
+        MethodHandle handle = AccessorFactory.setterHandle(field);
+        if (type == boolean.class) {
+            return (BooleanSetter) (object, value) -> {
+                try {
+                    handle.invokeExact(object, value);
+                } catch (Throwable t) {
+                    throw propagate(t);
+                }
+            };
+        } else if (type == byte.class) {
+            return (ByteSetter) (object, value) -> {
+                try {
+                    handle.invokeExact(object, value);
+                } catch (Throwable t) {
+                    throw propagate(t);
+                }
+            };
+        } else if (type == char.class) {
+            return (CharSetter) (object, value) -> {
+                try {
+                    handle.invokeExact(object, value);
+                } catch (Throwable t) {
+                    throw propagate(t);
+                }
+            };
+        } else if (type == short.class) {
+            return (ShortSetter) (object, value) -> {
+                try {
+                    handle.invokeExact(object, value);
+                } catch (Throwable t) {
+                    throw propagate(t);
+                }
+            };
+        } else if (type == int.class) {
+            return (IntSetter) (object, value) -> {
+                try {
+                    handle.invokeExact(object, value);
+                } catch (Throwable t) {
+                    throw propagate(t);
+                }
+            };
+        } else if (type == long.class) {
+            return (LongSetter) (object, value) -> {
+                try {
+                    handle.invokeExact(object, value);
+                } catch (Throwable t) {
+                    throw propagate(t);
+                }
+            };
+        } else if (type == float.class) {
+            return (FloatSetter) (object, value) -> {
+                try {
+                    handle.invokeExact(object, value);
+                } catch (Throwable t) {
+                    throw propagate(t);
+                }
+            };
+        }
+        return (DoubleSetter) (object, value) -> {
+            try {
+                handle.invokeExact(object, value);
+            } catch (Throwable t) {
+                throw propagate(t);
+            }
+        };
+    }
+
+    private static RuntimeException propagate(Throwable t) {
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return t instanceof RuntimeException ? (RuntimeException) t : new IllegalArgumentException(t);
+    }
+
+    /**
+     * @return new array of the given primitive component type, filled with
+     * generated values
+     */
+    static Object array(Class<?> type, int size, RandomGenerator random) {
+        if (type == boolean.class) {
+            boolean[] array = new boolean[size];
+            for (int i = 0; i < size; i++) {
+                array[i] = BOOLEAN.next(random);
+            }
+            return array;
+        } else if (type == byte.class) {
+            byte[] array = new byte[size];
+            random.nextBytes(array);
+            return array;
+        } else if (type == char.class) {
+            char[] array = new char[size];
+            for (int i = 0; i < size; i++) {
+                array[i] = CHAR.next(random);
+            }
+            return array;
+        } else if (type == short.class) {
+            short[] array = new short[size];
+            for (int i = 0; i < size; i++) {
+                array[i] = SHORT.next(random);
+            }
+            return array;
+        } else if (type == int.class) {
+            int[] array = new int[size];
+            for (int i = 0; i < size; i++) {
+                array[i] = INT.next(random);
+            }
+            return array;
+        } else if (type == long.class) {
+            long[] array = new long[size];
+            for (int i = 0; i < size; i++) {
+                array[i] = LONG.next(random);
+            }
+            return array;
+        } else if (type == float.class) {
+            float[] array = new float[size];
+            for (int i = 0; i < size; i++) {
+                array[i] = FLOAT.next(random);
+            }
+            return array;
+        } else if (type == double.class) {
+            double[] array = new double[size];
+            for (int i = 0; i < size; i++) {
+                array[i] = DOUBLE.next(random);
+            }
+            return array;
+        }
+        throw new IllegalArgumentException("Not a primitive type: " + type);
+    }
+
+    /**
+     * @return new array of the given primitive component type, filled with
+     * the values of a type generator that replaces the built-in one
+     */
+    static Object array(Class<?> type, int size, TypeGenerator<?> generator, RandomGenerator random) {
+        Object array = Array.newInstance(type, size);
+        for (int i = 0; i < size; i++) {
+            Array.set(array, i, generator.generate(random));
+        }
+        return array;
+    }
+
+    private static Class<?> setterInterface(Class<?> type) {
+        if (type == boolean.class) {
+            return BooleanSetter.class;
+        } else if (type == byte.class) {
+            return ByteSetter.class;
+        } else if (type == char.class) {
+            return CharSetter.class;
+        } else if (type == short.class) {
+            return ShortSetter.class;
+        } else if (type == int.class) {
+            return IntSetter.class;
+        } else if (type == long.class) {
+            return LongSetter.class;
+        } else if (type == float.class) {
+            return FloatSetter.class;
+        }
+        return DoubleSetter.class;
+    }
+
+    /**
+     * Generates a value and sets it on the object
+     */
+    interface Filler {
+        void fill(Object object, RandomGenerator random);
+    }
+
+    interface BooleanGenerator {
+        boolean next(RandomGenerator random);
+    }
+
+    interface ByteGenerator {
+        byte next(RandomGenerator random);
+    }
+
+    interface CharGenerator {
+        char next(RandomGenerator random);
+    }
+
+    interface ShortGenerator {
+        short next(RandomGenerator random);
+    }
+
+    interface IntGenerator {
+        int next(RandomGenerator random);
+    }
+
+    interface LongGenerator {
+        long next(RandomGenerator random);
+    }
+
+    interface FloatGenerator {
+        float next(RandomGenerator random);
+    }
+
+    interface DoubleGenerator {
+        double next(RandomGenerator random);
+    }
+
+    interface BooleanSetter {
+        void set(Object object, boolean value);
+    }
+
+    interface ByteSetter {
+        void set(Object object, byte value);
+    }
+
+    interface CharSetter {
+        void set(Object object, char value);
+    }
+
+    interface ShortSetter {
+        void set(Object object, short value);
+    }
+
+    interface IntSetter {
+        void set(Object object, int value);
+    }
+
+    interface LongSetter {
+        void set(Object object, long value);
+    }
+
+    interface FloatSetter {
+        void set(Object object, float value);
+    }
+
+    interface DoubleSetter {
+        void set(Object object, double value);
+    }
+}
@@ -1,7 +1,7 @@
 package org.oss.jstub;
 
-import com.sun.org.apache.xerces.internal.jaxp.datatype.XMLGregorianCalendarImpl;
-
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.XMLGregorianCalendar;
 import java.math.BigDecimal;
 import java.math.BigInteger;
@@ -9,6 +9,7 @@ import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
@@ -17,47 +18,107 @@ import java.util.Random;
 /**
  * Random class which extends and relies on java.util.Random to generate other random
  * basic types.
+ * <p>
+ * Unlike java.util.Random, the bits come from a plain SplitMix64 state instead
+ * of an atomic seed, so a generator must not be shared between threads; every
+ * generation works with its own generator, derived from the seed of the
+ * factory with {@link #fork(long)}.
  * @author nicu
  */
 public class RandomGenerator extends Random {
-    public String nextAlphabeticString() {
-        return nextAlphabeticString(5);
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    // upper bound of generated dates, fixed so that seeded runs are reproducible
+    private static final long MAX_DATE = 1577836800000L;// 2020-01-01T00:00:00Z
+    private static final String LETTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    // set through setSeed by the Random constructors, so no initializer here
+    private long state;
+
+    public RandomGenerator() {
     }
 
-    public String nextAlphabeticString(int size) {
-        // there is an equivalent of this in Apache Commons RandomStringUtils
-        // but high school programming...
-        byte[] bytes = new byte[size];
-        super.nextBytes(bytes);
-        for (int i = 0; i < bytes.length; i++) {
-            if (bytes[i] < 0) {
-                bytes[i] += Byte.MIN_VALUE;
+    public RandomGenerator(long seed) {
+        super(seed);
+    }
+
+    /**
+     * Derives a generator for the given key (like the index of a generated
+     * object) without advancing this one, so the same seed and key always
+     * give the same values, whatever the order the keys are used in.
+     */
+    public RandomGenerator fork(long key) {
+        return new RandomGenerator(forkSeed(key));
+    }
+
+    long forkSeed(long key) {
+        return mix64(state ^ mix64((key + 1) * GOLDEN_GAMMA));
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        super.setSeed(seed);
+        state = seed;
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+
+    @Override
+    public long nextLong() {
+        return mix64(state += GOLDEN_GAMMA);
+    }
+
+    @Override
+    public int nextInt() {
+        return (int) (nextLong() >>> 32);
+    }
+
+    @Override
+    public void nextBytes(byte[] bytes) {
+        // eight bytes from every long, instead of four from every int
+        int i = 0;
+        for (int words = bytes.length >> 3; words > 0; words--) {
+            long random = nextLong();
+            for (int n = 0; n < 8; n++, random >>>= 8) {
+                bytes[i++] = (byte) random;
             }
-            bytes[i] %= ('z' - 'a');
-            bytes[i] += 'a';
-            if (bytes[i] % 2 == 0) {
-                bytes[i] -= ('a' - 'A');
+        }
+        if (i < bytes.length) {
+            for (long random = nextLong(); i < bytes.length; random >>>= 8) {
+                bytes[i++] = (byte) random;
             }
         }
-        return new String(bytes);
+    }
+
+    public String nextAlphabeticString() {
+        return nextAlphabeticString(5);
+    }
+
+    /**
+     * @return string of letters, lowercase or uppercase, with the same
+     * probability for each of them
+     */
+    public String nextAlphabeticString(int size) {
+        return Alphabet.LETTERS.nextString(this, size);
     }
 
     public char nextChar() {
-        return nextAlphabeticString(1).charAt(0);
+        return LETTERS.charAt(nextInt(LETTERS.length()));
     }
 
     public byte nextByte() {
-        byte[] bytes = new byte[1];
-        nextBytes(bytes);
-        return bytes[0];
+        return (byte) next(8);
     }
 
-    // before today random date
+    public short nextShort() {
+        return (short) next(16);
+    }
+
+    // random date before 2020
     public Date nextDate() {
-        Date date = new Date();
-        long time = date.getTime();
-        date.setTime(Math.abs(super.nextLong() % time));
-        return date;
+        return new Date(Math.abs(nextLong() % MAX_DATE));
     }
 
     public BigInteger nextBigInteger() {
@@ -80,6 +141,10 @@ public class RandomGenerator extends Random {
         return nextByte();
     }
 
+    public Short nextShortObj() {
+        return nextShort();
+    }
+
     public Integer nextInteger() {
         return nextInt();
     }
@@ -117,7 +182,11 @@ public class RandomGenerator extends Random {
     }
 
     public XMLGregorianCalendar nextXmlGregorianCalendar() {
-        return new XMLGregorianCalendarImpl(nextGregorianCalendar());
+        return datatypeFactory().newXMLGregorianCalendar(nextGregorianCalendar());
+    }
+
+    static DatatypeFactory datatypeFactory() {
+        return DatatypeFactoryHolder.FACTORY;
     }
 
     public LocalDate nextLocalDate() {
@@ -125,7 +194,9 @@ public class RandomGenerator extends Random {
     }
 
     public LocalDateTime nextLocalDateTime() {
-        return LocalDateTime.now();
+        long time = nextDate().getTime();
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(time, 1000L),
+                (int) Math.floorMod(time, 1000L) * 1_000_000, ZoneOffset.UTC);
     }
 
     public Instant nextInstant() {
@@ -135,4 +206,23 @@ public class RandomGenerator extends Random {
     private int getRandomNumber() {
         return 4;// chosen by fair dice roll; guaranteed to be random
     }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    // the factory lookup is expensive, so it is done once and only if needed
+    private static final class DatatypeFactoryHolder {
+        private static final DatatypeFactory FACTORY = newDatatypeFactory();
+
+        private static DatatypeFactory newDatatypeFactory() {
+            try {
+                return DatatypeFactory.newInstance();
+            } catch (DatatypeConfigurationException e) {
+                throw new IllegalStateException("Cannot create XML datatype factory", e);
+            }
+        }
+    }
 }
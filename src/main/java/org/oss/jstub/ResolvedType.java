@@ -0,0 +1,171 @@
+package org.oss.jstub;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A declared type with its generics resolved to classes, all the way down:
+ * {@code Map<String, List<Long>>} is a tree of Map with the arguments String
+ * and List, the latter with the argument Long. Type variables are replaced
+ * by what the class of the bean binds them to through its generic
+ * superclasses and interfaces, or by their first bound; wildcards by their
+ * lower bound if they have one, else by their upper bound.
+ * <p>
+ * Resolved types are computed once per setter, field or parameter, when
+ * the {@link StubPlan} of a class is computed, so that values are generated
+ * without parsing {@link Type}s again; those of plain classes are cached.
+ *
+ * @author nicu
+ */
+final class ResolvedType {
+    private static final ResolvedType[] NO_ARGUMENTS = {};
+    private static final ClassValue<ResolvedType> CLASSES = new ClassValue<ResolvedType>() {
+        @Override
+        protected ResolvedType computeValue(Class<?> type) {
+            return new ResolvedType(type, NO_ARGUMENTS,
+                    type.isArray() ? CLASSES.get(type.getComponentType()) : null);
+        }
+    };
+    /*what the generic superclasses and interfaces of a class bind the type variables to*/
+    private static final ClassValue<Map<TypeVariable<?>, Type>> BINDINGS =
+            new ClassValue<Map<TypeVariable<?>, Type>>() {
+                @Override
+                protected Map<TypeVariable<?>, Type> computeValue(Class<?> type) {
+                    Map<TypeVariable<?>, Type> bindings = new HashMap<>();
+                    bind(type, bindings);
+                    return Collections.unmodifiableMap(bindings);
+                }
+            };
+
+    private final Class<?> type;
+    private final ResolvedType[] arguments;
+    /*null if not an array*/
+    private final ResolvedType componentType;
+
+    private ResolvedType(Class<?> type, ResolvedType[] arguments, ResolvedType componentType) {
+        this.type = type;
+        this.arguments = arguments;
+        this.componentType = componentType;
+    }
+
+    /**
+     * @return the class with the given classes as arguments, like the
+     * generic types given to {@code createStub}
+     */
+    static ResolvedType of(Class<?> type, Class<?>... genericTypes) {
+        if (genericTypes.length == 0) {
+            return CLASSES.get(type);
+        }
+        ResolvedType[] arguments = new ResolvedType[genericTypes.length];
+        for (int i = 0; i < genericTypes.length; i++) {
+            arguments[i] = CLASSES.get(genericTypes[i]);
+        }
+        return new ResolvedType(type, arguments, null);
+    }
+
+    /**
+     * @param owner the class whose member is declared with this type, which
+     *              binds the type variables of its superclasses
+     */
+    static ResolvedType of(Type type, Class<?> owner) {
+        return resolve(type, BINDINGS.get(owner), new HashSet<>());
+    }
+
+    Class<?> getType() {
+        return type;
+    }
+
+    int getArgumentCount() {
+        return arguments.length;
+    }
+
+    ResolvedType getArgument(int index) {
+        return arguments[index];
+    }
+
+    /**
+     * @return the type of the elements of an array, null if not an array
+     */
+    ResolvedType getComponentType() {
+        return componentType;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder string = new StringBuilder(type.getName());
+        for (int i = 0; i < arguments.length; i++) {
+            string.append(i == 0 ? '<' : ',').append(arguments[i]);
+        }
+        return arguments.length > 0 ? string.append('>').toString() : string.toString();
+    }
+
+    private static ResolvedType resolve(Type type, Map<TypeVariable<?>, Type> bindings,
+                                        Set<TypeVariable<?>> resolving) {
+        if (type instanceof Class) {
+            return CLASSES.get((Class<?>) type);
+        }
+        if (type instanceof ParameterizedType) {
+            Type[] typeArguments = ((ParameterizedType) type).getActualTypeArguments();
+            ResolvedType[] arguments = new ResolvedType[typeArguments.length];
+            for (int i = 0; i < typeArguments.length; i++) {
+                arguments[i] = resolve(typeArguments[i], bindings, resolving);
+            }
+            return new ResolvedType((Class<?>) ((ParameterizedType) type).getRawType(), arguments, null);
+        }
+        if (type instanceof GenericArrayType) {
+            ResolvedType component = resolve(((GenericArrayType) type).getGenericComponentType(),
+                    bindings, resolving);
+            return new ResolvedType(Array.newInstance(component.type, 0).getClass(), NO_ARGUMENTS, component);
+        }
+        if (type instanceof WildcardType) {
+            WildcardType wildcard = (WildcardType) type;
+            Type[] lowerBounds = wildcard.getLowerBounds();
+            return resolve(lowerBounds.length > 0 ? lowerBounds[0] : wildcard.getUpperBounds()[0],
+                    bindings, resolving);
+        }
+        if (type instanceof TypeVariable) {
+            TypeVariable<?> variable = (TypeVariable<?>) type;
+            if (!resolving.add(variable)) {
+                // recursive bound, like T extends Comparable<T>
+                return CLASSES.get(Object.class);
+            }
+            Type bound = bindings.get(variable);
+            ResolvedType resolved = resolve(bound != null ? bound : variable.getBounds()[0], bindings, resolving);
+            resolving.remove(variable);
+            return resolved;
+        }
+        return CLASSES.get(Object.class);
+    }
+
+    private static void bind(Type type, Map<TypeVariable<?>, Type> bindings) {
+        Class<?> cls;
+        if (type instanceof ParameterizedType) {
+            ParameterizedType parameterized = (ParameterizedType) type;
+            cls = (Class<?>) parameterized.getRawType();
+            TypeVariable<?>[] variables = cls.getTypeParameters();
+            Type[] typeArguments = parameterized.getActualTypeArguments();
+            for (int i = 0; i < variables.length; i++) {
+                bindings.putIfAbsent(variables[i], typeArguments[i]);
+            }
+        } else if (type instanceof Class) {
+            cls = (Class<?>) type;
+        } else {
+            return;
+        }
+        if (cls.getGenericSuperclass() != null) {
+            bind(cls.getGenericSuperclass(), bindings);
+        }
+        for (Type genericInterface : cls.getGenericInterfaces()) {
+            bind(genericInterface, bindings);
+        }
+    }
+}
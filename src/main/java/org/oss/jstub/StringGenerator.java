@@ -0,0 +1,130 @@
+package org.oss.jstub;
+
+/**
+ * Generates the String values of the stubs: strings of characters of an
+ * {@link Alphabet}, with a length picked uniformly between a minimum and a
+ * maximum. Given to {@link StubFactory.CustomValuesBuilder#strings}, it
+ * replaces the default of five letters.
+ * <p>
+ * In pool mode a fixed number of strings is generated once, when the
+ * generator is built, and the values are picked from them, which allocates
+ * nothing; this suits big collections of stubs where the content of the
+ * strings does not matter. The pool is generated from a fixed seed, so
+ * seeded factories stay reproducible.
+ * <p>
+ * A StringGenerator is immutable and can be shared by threads.
+ * <pre class="code">
+ * {@code
+ * StubFactory stubFactory = StubFactory.builder()
+ *         .strings(StringGenerator.builder()
+ *                 .alphabet(Alphabet.range(0x4E00, 0x9FFF))
+ *                 .length(2, 10)
+ *                 .build())
+ *         .build();
+ * }
+ * </pre>
+ *
+ * @author nicu
+ */
+public final class StringGenerator implements TypeGenerator<String> {
+    public static final int DEFAULT_LENGTH = 5;
+    private static final long POOL_SEED = 0x5EEDL;
+
+    private final Alphabet alphabet;
+    private final int minLength;
+    private final int maxLength;
+    /*null when not in pool mode*/
+    private final String[] pool;
+
+    private StringGenerator(Builder builder) {
+        this.alphabet = builder.alphabet;
+        this.minLength = builder.minLength;
+        this.maxLength = builder.maxLength;
+        this.pool = builder.poolSize > 0 ? newPool(builder.poolSize) : null;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Class<String> getType() {
+        return String.class;
+    }
+
+    @Override
+    public String generate(RandomGenerator random) {
+        return next(random);
+    }
+
+    public String next(RandomGenerator random) {
+        if (pool != null) {
+            return pool[random.nextInt(pool.length)];
+        }
+        return newString(random);
+    }
+
+    private String newString(RandomGenerator random) {
+        int length = minLength == maxLength ? minLength : minLength + random.nextInt(maxLength - minLength + 1);
+        return alphabet.nextString(random, length);
+    }
+
+    private String[] newPool(int size) {
+        RandomGenerator random = new RandomGenerator(POOL_SEED);
+        String[] strings = new String[size];
+        for (int i = 0; i < size; i++) {
+            strings[i] = newString(random);
+        }
+        return strings;
+    }
+
+    public static final class Builder {
+        private Alphabet alphabet = Alphabet.LETTERS;
+        private int minLength = DEFAULT_LENGTH;
+        private int maxLength = DEFAULT_LENGTH;
+        private int poolSize;
+
+        private Builder() {
+        }
+
+        public Builder alphabet(Alphabet alphabet) {
+            if (alphabet == null) {
+                throw new IllegalArgumentException("Alphabet not allowed to be null");
+            }
+            this.alphabet = alphabet;
+            return this;
+        }
+
+        public Builder length(int length) {
+            return length(length, length);
+        }
+
+        /**
+         * Lengths picked uniformly between the two, inclusive
+         */
+        public Builder length(int minLength, int maxLength) {
+            if (minLength < 0 || maxLength < minLength) {
+                throw new IllegalArgumentException("Invalid lengths " + minLength + ".." + maxLength);
+            }
+            this.minLength = minLength;
+            this.maxLength = maxLength;
+            return this;
+        }
+
+        /**
+         * Generates {@code poolSize} strings once and then picks the values
+         * from them
+         */
+        public Builder pool(int poolSize) {
+            if (poolSize <= 0) {
+                throw new IllegalArgumentException("The pool needs at least one string");
+            }
+            this.poolSize = poolSize;
+            return this;
+        }
+
+        public StringGenerator build() {
+            return new StringGenerator(this);
+        }
+    }
+}
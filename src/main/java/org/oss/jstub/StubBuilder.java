@@ -0,0 +1,12 @@
+package org.oss.jstub;
+
+/**
+ * Creates and populates the stubs of one bean class, compiled once per class
+ * by {@link StubCompiler}.
+ *
+ * @author nicu
+ */
+@FunctionalInterface
+interface StubBuilder<T> {
+    T build(GenerationContext context);
+}
@@ -0,0 +1,170 @@
+package org.oss.jstub;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Compiles the {@link StubPlan} of a class into a {@link StubBuilder} for the
+ * {@link StubFactory.Engine#COMPILED} engine: a single method handle, built
+ * with {@link MethodHandles} combinators, that calls the constructor and then
+ * every setter with its generator, in straight line instead of walking the
+ * slots of the plan. Field slots are written by field setter handles the
+ * same way. Primitive setters get their value directly from the
+ * matching {@link RandomGenerator} method, default value types and enums from
+ * their generator; other values (beans, collections, custom values...) are
+ * delegated to the reflective engine, which handles recursion.
+ *
+ * @author nicu
+ */
+final class StubCompiler {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    /*(GenerationContext)RandomGenerator*/
+    private static final MethodHandle GET_RANDOM;
+    /*(Function, Object)Object*/
+    private static final MethodHandle APPLY;
+    /*(StubFactory, GenerationContext, Object, Slot)void*/
+    private static final MethodHandle HANDLE;
+    /*(StubFactory, GenerationContext, Object, Slot)void*/
+    private static final MethodHandle HANDLE_SPECIAL;
+    /*(StubFactory, GenerationContext, StubPlan)Object*/
+    private static final MethodHandle CREATE_INSTANCE;
+    /*(StubFactory, GenerationContext, StubPlan, Object)void*/
+    private static final MethodHandle REGISTER;
+
+    static {
+        try {
+            GET_RANDOM = LOOKUP.findVirtual(GenerationContext.class, "getRandom",
+                    MethodType.methodType(RandomGenerator.class));
+            APPLY = LOOKUP.findVirtual(Function.class, "apply",
+                    MethodType.methodType(Object.class, Object.class));
+            MethodType slotHandler = MethodType.methodType(void.class, GenerationContext.class,
+                    Object.class, StubPlan.Slot.class);
+            HANDLE = LOOKUP.findVirtual(StubFactory.class, "handle", slotHandler);
+            HANDLE_SPECIAL = LOOKUP.findVirtual(StubFactory.class, "handleSpecial", slotHandler);
+            CREATE_INSTANCE = LOOKUP.findVirtual(StubFactory.class, "createInstance",
+                    MethodType.methodType(Object.class, GenerationContext.class, StubPlan.class));
+            REGISTER = LOOKUP.findVirtual(StubFactory.class, "register",
+                    MethodType.methodType(void.class, GenerationContext.class, StubPlan.class, Object.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private StubCompiler() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> StubBuilder<T> compile(StubFactory stubFactory, StubPlan<T> plan, Values values,
+                                      Function<Class<?>, Function<GenerationContext, ?>> generators) {
+        // (Object bean, GenerationContext)Object, returning the bean
+        MethodHandle body = MethodHandles.dropArguments(MethodHandles.identity(Object.class),
+                1, GenerationContext.class);
+        List<StubPlan.Slot> slots = plan.getSlots();
+        for (int i = slots.size() - 1; i >= 0; i--) {
+            body = MethodHandles.foldArguments(body,
+                    slotHandle(stubFactory, slots.get(i), values, generators));
+        }
+        if (plan.isCacheable()) {
+            MethodHandle register = MethodHandles.insertArguments(
+                    MethodHandles.insertArguments(REGISTER, 0, stubFactory), 1, plan);
+            body = MethodHandles.foldArguments(body, swap(register));
+        }
+        MethodHandle builder = MethodHandles.foldArguments(body, instantiation(stubFactory, plan));
+        Class<T> type = plan.getType();
+        return context -> {
+            try {
+                return (T) builder.invokeExact(context);
+            } catch (IllegalArgumentException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalArgumentException("Cannot create stub of type " + type.getName(), t);
+            }
+        };
+    }
+
+    /*(GenerationContext)Object*/
+    private static MethodHandle instantiation(StubFactory stubFactory, StubPlan<?> plan) {
+        if (plan.getInstantiation() == StubPlan.Instantiation.DEFAULT_CONSTRUCTOR) {
+            try {
+                MethodHandle constructor = LOOKUP.unreflectConstructor(plan.getDefaultConstructor())
+                        .asType(MethodType.methodType(Object.class));
+                return MethodHandles.dropArguments(constructor, 0, GenerationContext.class);
+            } catch (IllegalAccessException e) {
+                // not accessible from here, the reflective engine knows what to do
+            }
+        }
+        return MethodHandles.insertArguments(
+                MethodHandles.insertArguments(CREATE_INSTANCE, 0, stubFactory), 1, plan);
+    }
+
+    /*(Object bean, GenerationContext)void*/
+    private static MethodHandle slotHandle(StubFactory stubFactory, StubPlan.Slot slot, Values values,
+                                           Function<Class<?>, Function<GenerationContext, ?>> generators) {
+        if (slot.getKind() == StubPlan.Slot.Kind.LIST_GETTER) {
+            return delegate(HANDLE_SPECIAL, stubFactory, slot);
+        }
+        Class<?> type = slot.getType();
+        MethodHandle setter = slot.getField() != null ? unreflectSetter(slot.getField())
+                : unreflect(slot.getMethod());
+        if (setter == null || slot.getKind() == StubPlan.Slot.Kind.CUSTOM_VALUE) {
+            return delegate(HANDLE, stubFactory, slot);
+        }
+        MethodHandle generator;
+        if (slot.getKind() == StubPlan.Slot.Kind.PRIMITIVE_VALUE) {
+            generator = MethodHandles.filterReturnValue(GET_RANDOM, primitiveGenerator(type));
+            setter = setter.asType(MethodType.methodType(void.class, Object.class, type));
+        } else if (type.isEnum() || values.isDefaultValueType(type)) {
+            // never reused to stop recursion, so no need to ask the reflective engine
+            generator = APPLY.bindTo(generators.apply(type))
+                    .asType(MethodType.methodType(type, GenerationContext.class));
+            setter = setter.asType(MethodType.methodType(void.class, Object.class, type));
+        } else {
+            return delegate(HANDLE, stubFactory, slot);
+        }
+        return MethodHandles.filterArguments(setter, 1, generator);
+    }
+
+    /*(RandomGenerator)primitive, like RandomGenerator.nextInt for int*/
+    private static MethodHandle primitiveGenerator(Class<?> type) {
+        String name = type.getName();
+        String methodName = "next" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        try {
+            return LOOKUP.findVirtual(RandomGenerator.class, methodName, MethodType.methodType(type));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalStateException("No generator for " + type, e);
+        }
+    }
+
+    private static MethodHandle unreflect(Method method) {
+        try {
+            return LOOKUP.unreflect(method);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    private static MethodHandle unreflectSetter(Field field) {
+        try {
+            return LOOKUP.unreflectSetter(field);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    /*(Object bean, GenerationContext)void calling the slot handler of the factory*/
+    private static MethodHandle delegate(MethodHandle handler, StubFactory stubFactory, StubPlan.Slot slot) {
+        MethodHandle bound = MethodHandles.insertArguments(handler, 0, stubFactory);
+        return swap(MethodHandles.insertArguments(bound, 2, slot));
+    }
+
+    /*(GenerationContext, Object)void to (Object, GenerationContext)void*/
+    private static MethodHandle swap(MethodHandle handle) {
+        return MethodHandles.permuteArguments(handle,
+                MethodType.methodType(void.class, Object.class, GenerationContext.class), 1, 0);
+    }
+}
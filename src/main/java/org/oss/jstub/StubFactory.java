@@ -1,8 +1,26 @@
 package org.oss.jstub;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.lang.reflect.*;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * This class has the purpose of automatically creating stubs for POJOs that are
@@ -50,35 +68,181 @@ import java.util.function.Supplier;
  * </pre>
  * In this way the value for {@code String string} field will be randomly
  * selected from those provided.
+ * <p>
+ * A StubFactory keeps no state between calls, so a single instance can be
+ * shared by many threads.
+ * <p>
+ * When a seed is given to the builder, the generated values are reproducible:
+ * the stub with index {@code i} of a collection or stream (and
+ * {@code createStub}, as index 0) is generated from its own fork of the seed,
+ * so the same seed gives the same objects whatever the number of threads.
  *
  * @author nicu
  */
 public final class StubFactory {
     public static final int DEFAULT_COLLECTION_SIZE = 3;
-    /*Used to generate proxies for interface references*/
-    private static final InterfaceHandler interfaceHandler = new InterfaceHandler();
-    /*used to stop infinite recursion*/
-    private static final Map<String, Object> cache = new HashMap<>();
-
+    public static final int DEFAULT_POOL_SIZE = 16;
+    /*a few chunks per worker even out the chunks with bigger object graphs*/
+    private static final int CHUNKS_PER_WORKER = 4;
+    private static final StubFactory DEFAULT = new StubFactory(DEFAULT_COLLECTION_SIZE);
     private final Values values;
+    private final ClassValue<StubPlan<?>> plans;
+    /*
+     * Only used by the compiled engine; a map rather than a ClassValue, whose
+     * values would keep the factory they are bound to reachable for as long as
+     * the class is
+     */
+    private final Map<Class<?>, StubBuilder<?>> builders;
+    /*only used with lazy beans*/
+    private final Map<Class<?>, LazyBean<?>> lazyBeans;
     private final int collectionSize;
+    /*only forked, never used directly, so it can be shared by threads*/
+    private final RandomGenerator seededRandom;
+    private final Engine engine;
+    /*Used to generate proxies for interface references*/
+    private final InterfaceHandler interfaceHandler;
+    private final boolean generatedInterfaces;
+    private final boolean lazyCollections;
+    private final boolean immutableCollections;
+    private final Sharing sharing;
+    private final int poolSize;
+    private final boolean internImmutables;
+    private final int maxDepth;
+    private final int maxObjects;
+    private final Limit limit;
+    /*index of the next createStub call, only counted by seeded factories*/
+    private final AtomicLong createdStubs = new AtomicLong();
+
+    /**
+     * The way beans are populated from their {@link StubPlan}.
+     */
+    public enum Engine {
+        /**
+         * Walks the setters of the plan and generates the value of each one
+         */
+        REFLECTIVE,
+        /**
+         * Compiles the plan of every class, once, into a method handle that
+         * calls the constructor and the setters with their generators in
+         * straight line
+         */
+        COMPILED
+    }
+
+    /**
+     * What gets the generated values of a bean.
+     */
+    public enum Population {
+        /**
+         * The public setters, and the lists returned by the getters of the
+         * list properties without setter
+         */
+        SETTERS,
+        /**
+         * The fields declared by the class and its superclasses, whatever
+         * their visibility, final fields too, except the static and
+         * transient ones; custom values and ignored setters are matched by
+         * the name of the setter the field would have, like setName for
+         * name. The no argument constructor is used even if it is not
+         * public. Fields that cannot be made accessible, like those of the
+         * JDK classes, are left alone.
+         */
+        FIELDS
+    }
+
+    /**
+     * Which beans of a generation are the same instance. Whatever the
+     * policy, a bean that needs an instance of one of the beans it is part of
+     * gets that one, which is what stops infinite recursion.
+     */
+    public enum Sharing {
+        /**
+         * A single instance per class in every stub: all the properties of
+         * the same bean type in the object graph of a stub get the same
+         * instance
+         */
+        PER_CLASS,
+        /**
+         * A new instance for every property, only the beans being populated
+         * are reused
+         */
+        FRESH,
+        /**
+         * The first instances of every class (see
+         * {@link CustomValuesBuilder#poolSize(int)}) are reused round-robin
+         * for the properties of that class, in all the stubs of the same
+         * call; this bounds the memory used by big collections of stubs, at
+         * the price of sharing their sub-objects. Parallel generations have
+         * a pool per worker.
+         */
+        POOLED
+    }
+
+    /**
+     * What a bean gets, instead of a new bean, for the properties that
+     * would go beyond {@link CustomValuesBuilder#maxDepth(int)} or
+     * {@link CustomValuesBuilder#maxObjects(int)}.
+     */
+    public enum Limit {
+        /**
+         * The properties are left null
+         */
+        NULL,
+        /**
+         * The properties get the last bean of their class generated in the
+         * same stub, or null if there is none
+         */
+        REUSE
+    }
+
+    /**
+     * The formats in which {@code writeStubs} writes stubs, one per line.
+     */
+    public enum Format {
+        /**
+         * A JSON object (or value) per line
+         */
+        JSON_LINES,
+        /**
+         * A header line with the property names, then a line of comma
+         * separated values per stub
+         */
+        CSV
+    }
 
     private StubFactory(int collectionSize) {
-        this.values = new Values();
-        this.collectionSize = collectionSize;
+        this(new Values(), new CustomValuesBuilder(collectionSize));
     }
 
-    private StubFactory(Values values, int collectionSize) {
+    private StubFactory(Values values, CustomValuesBuilder builder) {
         this.values = values;
-        this.collectionSize = collectionSize;
+        this.plans = StubPlan.cache(values, builder.population);
+        this.collectionSize = builder.collectionSize;
+        this.seededRandom = builder.seed != null ? new RandomGenerator(builder.seed) : null;
+        this.engine = builder.engine;
+        this.interfaceHandler = new InterfaceHandler(this, builder.memoizedResults);
+        this.generatedInterfaces = builder.generatedInterfaces;
+        this.lazyCollections = builder.lazyCollections;
+        this.immutableCollections = builder.immutableCollections;
+        this.sharing = builder.sharing;
+        this.poolSize = builder.poolSize;
+        this.internImmutables = builder.internImmutables;
+        this.maxDepth = builder.maxDepth;
+        this.maxObjects = builder.maxObjects;
+        this.limit = builder.limit;
+        this.builders = engine == Engine.COMPILED ? new ConcurrentHashMap<>() : null;
+        this.lazyBeans = builder.lazyBeans ? new ConcurrentHashMap<>() : null;
     }
 
+    /**
+     * @return the factory without customizations, shared by all the callers
+     */
     public static StubFactory get() {
-        return new StubFactory(DEFAULT_COLLECTION_SIZE);
+        return DEFAULT;
     }
 
     public static StubFactory get(int collectionSize) {
-        return new StubFactory(collectionSize);
+        return collectionSize == DEFAULT_COLLECTION_SIZE ? DEFAULT : new StubFactory(collectionSize);
     }
 
     public static CustomValuesBuilder builder(int collectionSize) {
@@ -93,258 +257,604 @@ public final class StubFactory {
                                                                Supplier<C> collectionSupplier,
                                                                Class<T> cls,
                                                                Class<?>... genericTypes) {
-        cache.clear();
+        RandomGenerator root = rootRandom();
+        GenerationContext context = newContext();
         C collection = collectionSupplier.get();
         for (int i = 0; i < count; i++) {
-            T t = get(cls, genericTypes);
+            T t = generate(context, root, i, cls, genericTypes);
             collection.add(t);
         }
         return collection;
     }
 
+    /**
+     * Parallel version of {@link #createStubCollection(int, Supplier, Class, Class[])}:
+     * the count is split in chunks that are generated on the given executor,
+     * each by a worker with its own random generator and recursion state, and
+     * then added in order to the collection. Any executor can be used, like a
+     * {@link ForkJoinPool} or, on newer JDKs, a virtual thread per task executor.
+     * Custom suppliers are called from the worker threads.
+     */
+    public <C extends Collection<T>, T> C createStubCollection(int count,
+                                                               Supplier<C> collectionSupplier,
+                                                               Executor executor,
+                                                               Class<T> cls,
+                                                               Class<?>... genericTypes) {
+        RandomGenerator root = rootRandom();
+        List<CompletableFuture<List<T>>> chunks = submitChunks(count, executor, (start, end) -> {
+            GenerationContext context = newContext();
+            List<T> chunk = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++) {
+                chunk.add(generate(context, root, i, cls, genericTypes));
+            }
+            return chunk;
+        });
+        C collection = collectionSupplier.get();
+        for (CompletableFuture<List<T>> chunk : chunks) {
+            collection.addAll(join(chunk, chunks));
+        }
+        return collection;
+    }
+
+    /**
+     * Generates {@code count} stubs on the given executor like
+     * {@link #createStubCollection(int, Supplier, Executor, Class, Class[])},
+     * but hands each of them to the consumer as soon as it is created instead
+     * of collecting them. The consumer is called concurrently from the worker
+     * threads, so it needs to be thread safe.
+     */
+    public <T> void createStubs(int count, Executor executor, Consumer<? super T> consumer,
+                                Class<T> cls, Class<?>... genericTypes) {
+        RandomGenerator root = rootRandom();
+        List<CompletableFuture<Void>> chunks = submitChunks(count, executor, (start, end) -> {
+            GenerationContext context = newContext();
+            for (int i = start; i < end; i++) {
+                consumer.accept(generate(context, root, i, cls, genericTypes));
+            }
+            return null;
+        });
+        for (CompletableFuture<Void> chunk : chunks) {
+            join(chunk, chunks);
+        }
+    }
+
+    /**
+     * Creates one stub. On a seeded factory, the successive calls get the
+     * successive indexes of the seed, counted per factory: the first call
+     * returns the same stub as the first one of a collection, the next
+     * calls different ones, and a new factory with the same seed starts
+     * over. Calls from several threads get the indexes in the order they
+     * reach the counter. Unseeded factories share nothing between the calls,
+     * each one is seeded by the random generator of its thread.
+     */
     public <T> T createStub(Class<T> cls, Class<?>... genericTypes) {
-        cache.clear();
-        return get(cls, genericTypes);
+        GenerationContext context = newContext();
+        context.startStub(seededRandom != null ? seededRandom.forkSeed(createdStubs.getAndIncrement())
+                : ThreadLocalRandom.current().nextLong());
+        return get(context, cls, genericTypes);
+    }
+
+    /*the value of a type with generics at any depth, like the return type of an interface method*/
+    Object createStub(ResolvedType type, long seed) {
+        GenerationContext context = newContext();
+        context.startStub(seed);
+        return get(context, type);
+    }
+
+    /**
+     * Infinite stream of stubs that are generated only when the stream
+     * consumes them, so they never need to be on the heap all at the same
+     * time; use {@link Stream#limit(long)} to bound it. The stream can be made
+     * parallel, in which case the stubs are generated by the workers of the
+     * stream.
+     */
+    public <T> Stream<T> stream(Class<T> cls, Class<?>... genericTypes) {
+        return StreamSupport.stream(new StubSpliterator<>(
+                context -> get(context, cls, genericTypes), this::newContext,
+                rootRandom(), 0, Long.MAX_VALUE), false);
+    }
+
+    private GenerationContext newContext() {
+        return new GenerationContext(sharing, poolSize, internImmutables, maxDepth, maxObjects, limit);
+    }
+
+    /**
+     * Writes {@code count} stubs in the given format, without creating them:
+     * the values are generated while walking the properties of the class and
+     * written right away, through a buffer, so the memory used does not
+     * depend on the count. The writer is flushed, not closed.
+     * <p>
+     * There are no instances to share, so every property gets new values,
+     * and a property of the type of one of the beans it is part of is
+     * written as null (JSON) or left out (CSV). Interface properties are
+     * written as null. In CSV, the properties of nested beans are flattened
+     * in columns named after their path, like {@code simplePojo.name}, while
+     * collections, arrays and maps are left out.
+     */
+    public void writeStubs(int count, Format format, Writer writer, Class<?> cls,
+                           Class<?>... genericTypes) throws IOException {
+        writeStubs(count, format, StubWriter.target(writer), cls, genericTypes);
+        writer.flush();
+    }
+
+    /**
+     * Like {@link #writeStubs(int, Format, Writer, Class, Class[])}, in UTF-8.
+     */
+    public void writeStubs(int count, Format format, OutputStream outputStream, Class<?> cls,
+                           Class<?>... genericTypes) throws IOException {
+        writeStubs(count, format, StubWriter.target(Channels.newChannel(outputStream)), cls, genericTypes);
+        outputStream.flush();
+    }
+
+    /**
+     * Like {@link #writeStubs(int, Format, Writer, Class, Class[])}, in UTF-8.
+     */
+    public void writeStubs(int count, Format format, WritableByteChannel channel, Class<?> cls,
+                           Class<?>... genericTypes) throws IOException {
+        writeStubs(count, format, StubWriter.target(channel), cls, genericTypes);
+    }
+
+    private void writeStubs(int count, Format format, StubWriter.Target target, Class<?> cls,
+                            Class<?>... genericTypes) throws IOException {
+        StubWriter stubWriter = new StubWriter(values, plans, collectionSize, format, target, cls, genericTypes);
+        RandomGenerator root = rootRandom();
+        GenerationContext context = newContext();
+        stubWriter.writeHeader();
+        for (int i = 0; i < count; i++) {
+            context.startStub(root.forkSeed(i));
+            stubWriter.write(context);
+        }
+        stubWriter.flush();
     }
 
+    /**
+     * Writes the stubs to a compact binary file, to be reloaded with
+     * {@link #readSnapshot(Path, Class)} instead of generating them again.
+     * The properties of the beans that have both a setter and a getter are
+     * written, and objects shared by several properties are written once;
+     * interface stubs and beans without a public default constructor are
+     * written as null. Files are limited to 2GB.
+     */
+    public static <T> void writeSnapshot(Path file, Collection<? extends T> stubs, Class<T> cls)
+            throws IOException {
+        StubSnapshot.write(file, stubs, cls);
+    }
+
+    /**
+     * Maps a file written by {@link #writeSnapshot(Path, Collection, Class)}
+     * in memory. The returned list cannot be modified; each stub is decoded
+     * the first time it is accessed, and the same instance is returned after
+     * that. Properties that were added to the class since the snapshot was
+     * written keep their default values.
+     */
+    public static <T> List<T> readSnapshot(Path file, Class<T> cls) throws IOException {
+        return StubSnapshot.read(file, cls);
+    }
+
+    private RandomGenerator rootRandom() {
+        return seededRandom != null ? seededRandom
+                : new RandomGenerator(ThreadLocalRandom.current().nextLong());
+    }
+
+    private <T> T generate(GenerationContext context, RandomGenerator root, long index,
+                           Class<T> cls, Class<?>... genericTypes) {
+        context.startStub(root.forkSeed(index));
+        return get(context, cls, genericTypes);
+    }
+
+    /*the task gets the range of stub indexes of its chunk*/
+    private <R> List<CompletableFuture<R>> submitChunks(int count, Executor executor,
+                                                        BiFunction<Integer, Integer, R> task) {
+        int chunkCount = chunkCount(count, executor);
+        List<CompletableFuture<R>> chunks = new ArrayList<>(chunkCount);
+        int start = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            int end = start + count / chunkCount + (i < count % chunkCount ? 1 : 0);
+            int chunkStart = start;
+            chunks.add(CompletableFuture.supplyAsync(() -> task.apply(chunkStart, end), executor));
+            start = end;
+        }
+        return chunks;
+    }
+
+    private static int chunkCount(int count, Executor executor) {
+        int parallelism = executor instanceof ForkJoinPool
+                ? ((ForkJoinPool) executor).getParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(count, parallelism * CHUNKS_PER_WORKER));
+    }
+
+    private static <R> R join(CompletableFuture<R> chunk, List<? extends CompletableFuture<?>> chunks) {
+        try {
+            return chunk.join();
+        } catch (CompletionException e) {
+            chunks.forEach(other -> other.cancel(false));
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T get(GenerationContext context, Class<T> cls, Class<?>... genericTypes) {
+        return (T) get(context, ResolvedType.of(cls, genericTypes));
+    }
+
+    /*the generics of the arrays and collections, at any depth, come from the tree*/
     @SuppressWarnings("unchecked")
-    private <T> T get(Class<T> cls, Class<?>... genericTypes) {
+    private Object get(GenerationContext context, ResolvedType type) {
+        Class<Object> cls = (Class<Object>) type.getType();
         if (values.isDefaultValueType(cls)) {
-            return (T) values.randomDefaultValue(cls);
+            return context.intern(values.randomDefaultValue(cls, context.getRandom()));
         }
 
         if (cls.isEnum()) {
-            return generateEnum(cls);
+            return generateEnum(context, cls);
         }
 
         if (cls.isArray()) {
-            return generateArray(cls);
+            return generateArray(context, type);
         }
 
-        if (hasInterface(cls, Collection.class) || hasInterface(cls, Map.class)) {
-            return (T) generateCollection(cls, (Class<T>[]) genericTypes);
+        if (CollectionFactory.isCollection(cls)) {
+            return generateCollection(context, type);
         }
 
         if (cls.isInterface()) {
-            return interfaceHandler.createProxyStub(cls);
+            InterfaceImplementation<Object> implementation = generatedInterfaces ? InterfaceImplementation.of(cls) : null;
+            return implementation != null ? createImplementation(context, implementation)
+                    : interfaceHandler.createProxyStub(cls, context.getRandom().nextLong());
         }
 
-        T mockedObject = createInstance(cls);
-        if (isNotSpecialValue(cls)) {
-            cache.put(cls.getName(), mockedObject);
+        return createBean(context, plans.get(cls));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T createBean(GenerationContext context, StubPlan<T> plan) {
+        Class<T> type = plan.getType();
+        if (!context.canGenerate(type)) {
+            return (T) context.substitute(type);
         }
+        context.enter(type);
+        try {
+            LazyBean<T> lazyBean = lazyBeans != null
+                    ? (LazyBean<T>) lazyBeans.computeIfAbsent(type, cls -> LazyBean.of(plans.get(cls))) : null;
+            if (lazyBean != null && lazyBean != LazyBean.NONE) {
+                T bean = lazyBean.newInstance(this, new RandomGenerator(context.getRandom().nextLong()));
+                register(context, plan, bean);
+                populate(context, bean, lazyBean.getEagerSlots());
+                return bean;
+            }
+            if (engine == Engine.COMPILED) {
+                return ((StubBuilder<T>) builders.computeIfAbsent(type, cls ->
+                        StubCompiler.compile(this, plans.get(cls), values, this::generatorOf))).build(context);
+            }
+            T mockedObject = createInstance(context, plan);
+            register(context, plan, mockedObject);
+            populate(context, mockedObject, plan.getSlots());
+            return mockedObject;
+        } finally {
+            context.exit();
+        }
+    }
 
-        for (Method method : cls.getMethods()) {
-            if (isValid(method)) {
-                handle(mockedObject, method);
-            } else if (hasOnlyGetter(method, cls)) {
-                handleSpecial(mockedObject, method);
+    private void populate(GenerationContext context, Object mockedObject, List<StubPlan.Slot> slots) {
+        for (StubPlan.Slot slot : slots) {
+            if (slot.getKind() == StubPlan.Slot.Kind.LIST_GETTER) {
+                handleSpecial(context, mockedObject, slot);
+            } else {
+                handle(context, mockedObject, slot);
             }
         }
-        return mockedObject;
+    }
+
+    /*
+     * The slots of a property of a lazy bean are populated in a stub of
+     * their own, where the bean is the only instance already generated.
+     */
+    void populateLazily(StubPlan<?> plan, Object bean, List<StubPlan.Slot> slots, long seed) {
+        GenerationContext context = newContext();
+        context.startStub(seed);
+        context.enter(plan.getType());
+        try {
+            register(context, plan, bean);
+            populate(context, bean, slots);
+        } finally {
+            context.exit();
+        }
     }
 
     @SuppressWarnings("unchecked")
-    private <T> void handleSpecial(T mockedObject, Method method) {
+    private <T> T createImplementation(GenerationContext context, InterfaceImplementation<T> implementation) {
+        Class<T> type = implementation.getType();
+        if (!context.canGenerate(type)) {
+            return (T) context.substitute(type);
+        }
+        context.enter(type);
         try {
-            List list = (List) method.invoke(mockedObject);
-            if (list == null || list.size() >= collectionSize) {
-                return;
+            T stub = implementation.newInstance();
+            context.register(type, stub);
+            for (InterfaceImplementation.Slot slot : implementation.getSlots()) {
+                Object value = context.reusable(slot.getType());
+                slot.set(stub, value != null ? value : get(context, slot.getResolvedType()));
             }
-            Type type = method.getGenericReturnType();
-            Class<?>[] genericTypes = getGenericTypes(type);
-            if (genericTypes.length == 0) {
-                return;// wildcard type
-            }
-            Class<?> genericClass = genericTypes[0];
-            list.addAll(createStubCollection(collectionSize - list.size(), ArrayList::new, genericClass));
-        } catch (IllegalAccessException | InvocationTargetException e) {
-            throw new IllegalArgumentException("Cannot invoke method " + method
-                    + " on object of type " + mockedObject.getClass().getName());
+            return stub;
+        } finally {
+            context.exit();
         }
     }
 
-    boolean isNotSpecialValue(Class<?> cls) {
-        return !(values.isDefaultValueType(cls) || Collection.class.isAssignableFrom(cls)
-                || Map.class.isAssignableFrom(cls));
+    void register(GenerationContext context, StubPlan<?> plan, Object mockedObject) {
+        if (plan.isCacheable()) {
+            context.register(plan.getType(), mockedObject);
+        }
     }
 
-    private <T> T generateEnum(Class<T> cls) {
+    @SuppressWarnings("unchecked")
+    void handleSpecial(GenerationContext context, Object mockedObject, StubPlan.Slot slot) {
+        List list;
+        try {
+            list = (List) slot.get(mockedObject);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Cannot invoke method " + slot.getMethod()
+                    + " on object of type " + mockedObject.getClass().getName(), e);
+        }
+        if (list == null || list.size() >= collectionSize) {
+            return;
+        }
+        ResolvedType type = slot.getResolvedType();
+        if (type.getArgumentCount() == 0) {
+            return;// raw type
+        }
+        ResolvedType elementType = type.getArgument(0);
+        for (int i = list.size(); i < collectionSize; i++) {
+            list.add(get(context, elementType));
+        }
+    }
+
+    private <T> T generateEnum(GenerationContext context, Class<T> cls) {
         T[] enumConstants = cls.getEnumConstants();
-        int randValue = values.getRandomGenerator().nextInt(enumConstants.length);
+        int randValue = context.getRandom().nextInt(enumConstants.length);
         return enumConstants[randValue];
     }
 
-    @SuppressWarnings("unchecked")
-    private <T> T generateArray(Class<T> cls) {
-        Class<?> arrayType = cls.getComponentType();
-        Object array = Array.newInstance(arrayType, collectionSize);
+    private Object generateArray(GenerationContext context, ResolvedType type) {
+        ResolvedType componentType = type.getComponentType();
+        Class<?> arrayType = componentType.getType();
+        if (arrayType.isPrimitive()) {
+            if (values.hasBuiltInGenerator(arrayType)) {
+                return PrimitiveGenerators.array(arrayType, collectionSize, context.getRandom());
+            }
+            return PrimitiveGenerators.array(arrayType, collectionSize, values.defaultValueGenerator(arrayType),
+                    context.getRandom());
+        }
+        Object[] array = (Object[]) Array.newInstance(arrayType, collectionSize);
+        if (componentType.getArgumentCount() > 0 || componentType.getComponentType() != null) {
+            for (int i = 0; i < collectionSize; i++) {
+                array[i] = get(context, componentType);
+            }
+            return array;
+        }
+        Function<GenerationContext, ?> generator = generatorOf(arrayType);
         for (int i = 0; i < collectionSize; i++) {
-            Object value = get(arrayType);
-            Array.set(array, i, value);
+            array[i] = generator.apply(context);
         }
-        return (T) array;
+        return array;
     }
 
-    private <T> boolean hasInterface(Class<T> cls, Class<?> interf) {
-        if (cls.getName().equals(interf.getName())) {
-            return true;
+    /*resolves once what get does for each of many values of the same class*/
+    private Function<GenerationContext, ?> generatorOf(Class<?> cls) {
+        if (values.isDefaultValueType(cls)) {
+            TypeGenerator<?> generator = values.defaultValueGenerator(cls);
+            return context -> context.intern(generator.generate(context.getRandom()));
         }
-        for (Class<?> classInterface : cls.getInterfaces()) {
-            if (interf.getName().equals(classInterface.getName())) {
-                return true;
-            }
+        if (cls.isEnum()) {
+            Object[] enumConstants = cls.getEnumConstants();
+            return context -> enumConstants[context.getRandom().nextInt(enumConstants.length)];
         }
-        return false;
+        if (cls.isArray() || cls.isInterface() || CollectionFactory.isCollection(cls)) {
+            ResolvedType type = ResolvedType.of(cls);
+            return context -> get(context, type);
+        }
+        StubPlan<?> plan = plans.get(cls);
+        return context -> createBean(context, plan);
+    }
+
+    static <T> boolean hasInterface(Class<T> cls, Class<?> interf) {
+        return interf.isAssignableFrom(cls);
     }
 
-    @SafeVarargs
-    // redundant final because annotation
-    private final <T> Object generateCollection(Class<?> collectionType, Class<T>... genericTypes) {
-        if (hasInterface(collectionType, Map.class)) {
-            if (genericTypes.length != 2) {
+    /*
+     * The collection is created by the factory of the declared type, for the
+     * number of elements it gets; nulls are left out of those refusing them.
+     */
+    private Object generateCollection(GenerationContext context, ResolvedType type) {
+        Class<?> cls = type.getType();
+        CollectionFactory factory = CollectionFactory.of(cls);
+        if (factory.isMap()) {
+            if (type.getArgumentCount() != 2) {
                 throw new IllegalArgumentException("A map needs two generic types.");
             }
-            Map<T, T> map = new HashMap<>(collectionSize);
-            for (int i = 0; i < collectionSize; i++) {
-                T t = get(genericTypes[0]);
-                T v = get(genericTypes[1]);
-                map.put(t, v);
-            }
-            return map;
-        } else {
-            if (genericTypes.length != 1) {
-                throw new IllegalArgumentException("A collection needs one generic type.");
-            }
-            Collection<T> collection;
-            if (hasInterface(collectionType, Set.class)) {
-                collection = new HashSet<>(collectionSize);
-            } else {
-                collection = new ArrayList<>(collectionSize);
+            if (lazyCollections && cls.isAssignableFrom(AbstractMap.class)) {
+                return generateLazyMap(context, type.getArgument(0), type.getArgument(1));
             }
+            Map<Object, Object> map = factory.newMap(collectionSize, type.getArgument(0).getType());
             for (int i = 0; i < collectionSize; i++) {
-                T mock = get(genericTypes[0]);
-                collection.add(mock);
+                Object key = get(context, type.getArgument(0));
+                Object value = get(context, type.getArgument(1));
+                if (factory.permitsNulls() || key != null && value != null) {
+                    map.put(key, value);
+                }
+            }
+            return immutableCollections && factory.allowsImmutable() ? factory.immutable(map) : map;
+        }
+        if (type.getArgumentCount() != 1) {
+            throw new IllegalArgumentException("A collection needs one generic type.");
+        }
+        ResolvedType elementType = type.getArgument(0);
+        if (lazyCollections && cls.isAssignableFrom(AbstractList.class)) {
+            RandomGenerator root = new RandomGenerator(context.getRandom().nextLong());
+            return LazyCollections.list(collectionSize, index -> generateLazily(root, index, elementType));
+        }
+        Collection<Object> collection = factory.newCollection(collectionSize, elementType.getType());
+        for (int i = 0; i < collectionSize; i++) {
+            Object element = get(context, elementType);
+            if (element != null || factory.permitsNulls()) {
+                collection.add(element);
             }
-            return collection;
         }
+        return immutableCollections && factory.allowsImmutable() ? factory.immutable(collection) : collection;
+    }
+
+    /*the keys are generated right away, in the stub, since they make the size of the map*/
+    private Map<Object, Object> generateLazyMap(GenerationContext context, ResolvedType keyType,
+                                                ResolvedType valueType) {
+        RandomGenerator root = new RandomGenerator(context.getRandom().nextLong());
+        Set<Object> keys = new LinkedHashSet<>();
+        for (int i = 0; i < collectionSize; i++) {
+            keys.add(get(context, keyType));
+        }
+        return LazyCollections.map(keys.toArray(), index -> generateLazily(root, index, valueType));
     }
 
-    private <T> T createInstance(Class<T> cls) {
+    /*
+     * Lazy elements are generated in a stub of their own, seeded by their
+     * index, so they are the same whenever and in whatever order they are
+     * read; they do not share instances with the bean holding the collection.
+     */
+    private Object generateLazily(RandomGenerator root, int index, ResolvedType type) {
+        GenerationContext context = newContext();
+        context.startStub(root.forkSeed(index));
+        return get(context, type);
+    }
+
+    <T> T createInstance(GenerationContext context, StubPlan<T> plan) {
+        if (plan.getInstantiation() == StubPlan.Instantiation.OTHER_CONSTRUCTORS) {
+            return instantiate(context, plan);
+        }
         try {
-            return cls.newInstance();
-        } catch (InstantiationException e) {
-            return tryNonDefaultConstructors(cls);
-        } catch (IllegalAccessException e) {
-            return tryNonDefaultConstructors(cls);
+            return plan.getDefaultConstructor().newInstance();
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot call the default constructor of class "
+                    + plan.getType().getName(), e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalArgumentException("Default constructor of class "
+                    + plan.getType().getName() + " failed", e.getCause());
         }
     }
 
+    /*
+     * The instantiator that worked before is called first, and usually
+     * works again; the others are only tried, in their rank order, until one
+     * works, the first time or when the generated arguments are refused.
+     */
     @SuppressWarnings("unchecked")
-    private <T> T tryNonDefaultConstructors(Class<T> cls) {
-        Constructor<?>[] constructors = cls.getDeclaredConstructors();
-        for (Constructor<?> constructor : constructors) {
-            if (constructor.isAccessible()) {
-                constructor.setAccessible(true);
+    private <T> T instantiate(GenerationContext context, StubPlan<T> plan) {
+        Instantiator last = plan.getInstantiator();
+        Throwable failure = null;
+        if (last != null) {
+            try {
+                return (T) last.newInstance(arguments(context, last));
+            } catch (VirtualMachineError e) {
+                throw e;
+            } catch (Throwable t) {
+                failure = t;
             }
-            Class<?>[] parameterTypes = constructor.getParameterTypes();
-            Object[] parameterObjects = new Object[parameterTypes.length];
-            int i = 0;
-            for (Class<?> parameterType : parameterTypes) {
-                Type type = constructor.getGenericParameterTypes()[0];
-                Class<?>[] genericTypes = getGenericTypes(type);
-                parameterObjects[i++] = get(parameterType, genericTypes);
+        }
+        for (Instantiator instantiator : plan.getInstantiators()) {
+            if (instantiator == last) {
+                continue;
             }
             try {
-                return (T) constructor.newInstance(parameterObjects);
-            } catch (InstantiationException | InvocationTargetException
-                    | IllegalAccessException e) {
-                // Let it try another constructor
+                T instance = (T) instantiator.newInstance(arguments(context, instantiator));
+                plan.setInstantiator(instantiator);
+                return instance;
+            } catch (VirtualMachineError e) {
+                throw e;
+            } catch (Throwable t) {
+                failure = t;
             }
         }
-        throw new IllegalArgumentException("Class " + cls.getName()
-                + " does not have default constructor, "
-                + " and did not found valid accessible constructor.");
-    }
-
-    private boolean isValid(Method method) {
-        return method.getName().startsWith("set") && method.getParameterTypes().length == 1
-                && !method.isSynthetic();
+        throw new IllegalArgumentException("Class " + plan.getType().getName()
+                + " has no default constructor, and no constructor, static factory"
+                + " or builder that could be called", failure);
     }
 
-    private boolean hasOnlyGetter(Method method, Class<?> cls) {
-        String methodName = method.getName();
-        String setterName = methodName.replaceFirst("g", "s");
-        boolean isSpecialPartial = methodName.startsWith("get") &&
-                method.getParameterTypes().length == 0 &&
-                method.getReturnType().equals(List.class);
-        if (isSpecialPartial) {
-            for (Method innerMethod : cls.getMethods()) {
-                if (innerMethod.getName().equals(setterName)) {
-                    isSpecialPartial = false;
-                }
-            }
+    private Object[] arguments(GenerationContext context, Instantiator instantiator) {
+        Class<?>[] parameterTypes = instantiator.getParameterTypes();
+        Object[] arguments = new Object[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            arguments[i] = get(context, instantiator.getResolvedType(i));
         }
-        return isSpecialPartial;
+        return arguments;
     }
 
-    private <T> void handle(T mockedObject, Method method) {
-        Object value;
-        String methodName = method.getName();
-        if (values.isIgnoredSetter(methodName)) {
+    void handle(GenerationContext context, Object mockedObject, StubPlan.Slot slot) {
+        if (slot.getKind() == StubPlan.Slot.Kind.PRIMITIVE_VALUE) {
+            fill(mockedObject, slot, context.getRandom());
             return;
         }
-        if (values.isCustomValue(methodName)) {
-            value = values.getCustomValue(methodName);
+        Object value;
+        if (slot.getKind() == StubPlan.Slot.Kind.CUSTOM_VALUE) {
+            value = values.getCustomValue(slot.getName(), context.getRandom());
         } else {
-            Class<?> parameterClass = method.getParameterTypes()[0];
-            String parameterClassName = parameterClass.getName();
-            if (cache.containsKey(parameterClassName)) {
-                value = cache.get(parameterClassName);
-            } else if (hasInterface(parameterClass, Collection.class)
-                    || hasInterface(parameterClass, Map.class)) {
-                Type type = method.getGenericParameterTypes()[0];
-                Class<?>[] genericTypes = getGenericTypes(type);
-                value = get(parameterClass, genericTypes);
-            } else {
-                value = get(parameterClass);
+            value = context.reusable(slot.getType());
+            if (value == null) {
+                value = get(context, slot.getResolvedType());
             }
         }
-        invoke(mockedObject, method, value);
+        invoke(mockedObject, slot, value);
     }
 
-    Class<?>[] getGenericTypes(Type obj) {
-        if (!(obj instanceof ParameterizedType)) {
-            return new Class<?>[]{};
-        }
-        ParameterizedType parameterizedType = ParameterizedType.class.cast(obj);
-        Type[] typeArguments = parameterizedType.getActualTypeArguments();
-        Class<?>[] genericTypes = new Class<?>[typeArguments.length];
-        for (int i = 0; i < typeArguments.length; i++) {
-            if (!(typeArguments[i] instanceof Class)) {
-                return new Class<?>[]{};
-            }
-            genericTypes[i] = Class.class.cast(typeArguments[i]);
-        }
-        return genericTypes;
-    }
 
-    private void invoke(Object object, Method method, Object value) {
+    private void invoke(Object object, StubPlan.Slot slot, Object value) {
         try {
-            method.invoke(object, value);
-        } catch (Exception e) {
-            throw new IllegalArgumentException("Cannot invoke method '" + method.getName() +
+            slot.set(object, value);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Cannot invoke method '" + slot.getName() +
                     "' of object of type '" + object.getClass() + "' with argument of type '"
                     + value.getClass() + "'", e);
         }
 
     }
 
+    private void fill(Object object, StubPlan.Slot slot, RandomGenerator random) {
+        try {
+            slot.fill(object, random);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Cannot invoke method '" + slot.getName() +
+                    "' of object of type '" + object.getClass() + "' with argument of type '"
+                    + slot.getType() + "'", e);
+        }
+    }
+
     public static class CustomValuesBuilder {
         private final Map<String, Object[]> customValues;
         private final Map<String, Supplier<?>> customSuppliers;
         private final Set<String> ignoredSetters;
         private final int collectionSize;
+        private Long seed;
+        private Engine engine = Engine.REFLECTIVE;
+        private Population population = Population.SETTERS;
+        private int memoizedResults = InterfaceHandler.NOT_MEMOIZED;
+        private boolean generatedInterfaces;
+        private boolean lazyCollections;
+        private boolean immutableCollections;
+        private boolean lazyBeans;
+        private Sharing sharing = Sharing.PER_CLASS;
+        private int poolSize = DEFAULT_POOL_SIZE;
+        private boolean internImmutables;
+        private int maxDepth = Integer.MAX_VALUE;
+        private int maxObjects = Integer.MAX_VALUE;
+        private Limit limit = Limit.NULL;
+        private final List<TypeGenerator<?>> typeGenerators = new ArrayList<>();
+        /*built on first use and reused until the builder is changed*/
+        private StubFactory factory;
 
         CustomValuesBuilder(int collectionSize) {
             this.customValues = new HashMap<>();
@@ -353,9 +863,199 @@ public final class StubFactory {
             this.collectionSize = collectionSize;
         }
 
+        /**
+         * Makes the generated values reproducible: factories built with the
+         * same seed generate the same stubs.
+         */
+        public CustomValuesBuilder seed(long seed) {
+            this.seed = seed;
+            return changed();
+        }
+
+        public CustomValuesBuilder engine(Engine engine) {
+            this.engine = engine;
+            return changed();
+        }
+
+        /**
+         * Populates the beans through their setters (the default) or
+         * directly through their fields, see {@link Population}.
+         */
+        public CustomValuesBuilder population(Population population) {
+            this.population = population;
+            return changed();
+        }
+
+        /**
+         * Makes the interface proxies stub the result of each method and
+         * arguments once, and return the same value on the next calls.
+         */
+        public CustomValuesBuilder memoizeInterfaces() {
+            this.memoizedResults = InterfaceHandler.UNBOUNDED;
+            return changed();
+        }
+
+        /**
+         * Like {@link #memoizeInterfaces()}, but every proxy keeps only the
+         * given number of most recently used results.
+         */
+        public CustomValuesBuilder memoizeInterfaces(int maxResultsPerProxy) {
+            if (maxResultsPerProxy <= 0) {
+                throw new IllegalArgumentException("The number of memoized results must be positive");
+            }
+            this.memoizedResults = maxResultsPerProxy;
+            return changed();
+        }
+
+        /**
+         * Stubs interfaces with classes generated at runtime instead of
+         * proxies: every method returns a value stubbed when the stub is
+         * created, like the getter of a bean. Interfaces that cannot be
+         * implemented that way (non public ones, for example) are still
+         * stubbed with proxies.
+         */
+        public CustomValuesBuilder generateInterfaces() {
+            this.generatedInterfaces = true;
+            return changed();
+        }
+
+        /**
+         * Makes the generated lists, collections and maps virtual: an
+         * element is only generated when it is first read, from a seed
+         * derived from its index, and then kept, so the time and memory
+         * spent on big collections depend on what is read of them. Each
+         * element is generated as a stub of its own, sharing no instances
+         * with the bean that holds the collection. Lists have a fixed size,
+         * maps cannot be modified and get all their keys right away; sets
+         * are still generated in full, since they hash their elements.
+         */
+        public CustomValuesBuilder lazyCollections() {
+            this.lazyCollections = true;
+            return changed();
+        }
+
+        /**
+         * Makes the generated collections and maps unmodifiable when their
+         * declared type is an interface like {@code List}, {@code Set},
+         * {@code Map} or their sorted variants: views of collections
+         * created for their exact size, or the empty and singleton
+         * collections for none or one element. Collections declared with a
+         * class, like {@code ArrayList}, or a queue are still modifiable.
+         */
+        public CustomValuesBuilder immutableCollections() {
+            this.immutableCollections = true;
+            return changed();
+        }
+
+        /**
+         * Makes the generated beans instances of subclasses generated at
+         * runtime, whose properties are only generated when their getter is
+         * first called, so that the time spent on wide beans and deep
+         * object graphs depends on what is read of them. Each property is
+         * generated as a stub of its own, seeded by the property, where the
+         * bean it belongs to is the only instance to share. Properties
+         * without a public getter that can be overridden, and beans that
+         * cannot be subclassed (final, not public, or without a public or
+         * protected default constructor) are generated right away.
+         */
+        public CustomValuesBuilder lazyBeans() {
+            this.lazyBeans = true;
+            return changed();
+        }
+
+        public CustomValuesBuilder sharing(Sharing sharing) {
+            this.sharing = sharing;
+            return changed();
+        }
+
+        /**
+         * Sets the number of instances per class reused by the
+         * {@link Sharing#POOLED} sharing.
+         */
+        public CustomValuesBuilder poolSize(int poolSize) {
+            if (poolSize <= 0) {
+                throw new IllegalArgumentException("The pool size must be positive");
+            }
+            this.poolSize = poolSize;
+            return changed();
+        }
+
+        /**
+         * Makes the equal generated values of immutable types (like
+         * {@code String}, {@code BigDecimal} or the primitive wrappers) the
+         * same instance, within the stubs of the same call, or of the same
+         * stub for {@link StubFactory#stream(Class, Class[])}.
+         * <p>
+         * It only saves memory when the values repeat: custom values, enum
+         * like type generators with a few values, booleans or small numbers.
+         * Random strings, dates or longs are hardly ever equal, so interning
+         * them only costs a lookup per value. The interned values are kept in
+         * a table of fixed size, where a value replaces the one with the same
+         * slot, so the equal values of a very large call are not all
+         * guaranteed to be the same instance.
+         */
+        public CustomValuesBuilder internImmutables() {
+            this.internImmutables = true;
+            return changed();
+        }
+
+        /**
+         * Limits the number of nested beans, the top level one included;
+         * the beans deeper than that are replaced following the
+         * {@link #limit(Limit)}. There is no limit by default.
+         */
+        public CustomValuesBuilder maxDepth(int maxDepth) {
+            if (maxDepth <= 0) {
+                throw new IllegalArgumentException("The maximum depth must be positive");
+            }
+            this.maxDepth = maxDepth;
+            return changed();
+        }
+
+        /**
+         * Limits the number of beans generated for every stub, the top level
+         * one included; the next ones are replaced following the
+         * {@link #limit(Limit)}. There is no limit by default.
+         */
+        public CustomValuesBuilder maxObjects(int maxObjects) {
+            if (maxObjects <= 0) {
+                throw new IllegalArgumentException("The maximum number of objects must be positive");
+            }
+            this.maxObjects = maxObjects;
+            return changed();
+        }
+
+        public CustomValuesBuilder limit(Limit limit) {
+            this.limit = limit;
+            return changed();
+        }
+
+        /**
+         * Generator of the String values, instead of five letters; custom
+         * values still take precedence.
+         */
+        public CustomValuesBuilder strings(StringGenerator strings) {
+            if (strings == null) {
+                throw new IllegalArgumentException("String generator not allowed to be null");
+            }
+            return addTypeGenerator(strings);
+        }
+
+        /**
+         * Generator of the values of its type, instead of the built-in one
+         * or of stubbing the type as a bean; see {@link TypeGenerator}.
+         */
+        public CustomValuesBuilder addTypeGenerator(TypeGenerator<?> generator) {
+            if (generator == null || generator.getType() == null) {
+                throw new IllegalArgumentException("Type generator and its type not allowed to be null");
+            }
+            typeGenerators.add(generator);
+            return changed();
+        }
+
         public CustomValuesBuilder addIgnoredSetter(String setterName) {
             ignoredSetters.add(setterName);
-            return this;
+            return changed();
         }
 
         public CustomValuesBuilder addCustomSupplier(String setterName, Supplier<?> supplier) {
@@ -363,7 +1063,7 @@ public final class StubFactory {
                 throw new IllegalArgumentException("Emtpy setter name not allowerd");
             }
             customSuppliers.put(setterName, supplier);
-            return this;
+            return changed();
         }
 
         public CustomValuesBuilder addCustomValue(String setterName, Object... customValues) {
@@ -375,31 +1075,41 @@ public final class StubFactory {
                         + " one or multiple custom values need to be provided.");
             }
             this.customValues.put(setterName, customValues);
-            return this;
+            return changed();
         }
 
         public <T> T createStub(Class<T> cls, Class<?>... genericTypes) {
-            Values values =
-                    new Values(customValues, customSuppliers, ignoredSetters);
-            StubFactory stubFactory = new StubFactory(values, collectionSize);
-            return stubFactory.createStub(cls, genericTypes);
+            return factory().createStub(cls, genericTypes);
         }
 
         public <C extends Collection<T>, T> C createStubCollection(int count,
                                                                    Supplier<C> collectionSupplier,
                                                                    Class<T> cls,
                                                                    Class<?>... genericTypes) {
-            Values values =
-                    new Values(customValues, customSuppliers, ignoredSetters);
-            StubFactory stubFactory = new StubFactory(values, collectionSize);
-            return stubFactory.createStubCollection(count,
-                    collectionSupplier, cls, genericTypes);
+            return factory().createStubCollection(count, collectionSupplier, cls, genericTypes);
         }
 
+        /**
+         * @return factory with the configuration of the builder; the same
+         * factory is returned until the builder is changed, and factories
+         * with the same customized setters share the plans of the classes
+         */
         public StubFactory build() {
-            Values values =
-                    new Values(customValues, customSuppliers, ignoredSetters);
-            return new StubFactory(values, collectionSize);
+            return factory();
+        }
+
+        private StubFactory factory() {
+            if (factory == null) {
+                Values values = new Values(customValues, customSuppliers, ignoredSetters,
+                        TypeGenerators.DEFAULT.with(typeGenerators));
+                factory = new StubFactory(values, this);
+            }
+            return factory;
+        }
+
+        private CustomValuesBuilder changed() {
+            factory = null;
+            return this;
         }
     }
 }
@@ -0,0 +1,398 @@
+package org.oss.jstub;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Everything {@link StubFactory} needs to know in order to stub a Java Bean
+ * class, discovered once by reflection and reused for every instance of that
+ * class: how the class gets instantiated and which setters are called, in
+ * which order, with which {@link ResolvedType}s. Setters and getters
+ * are called through accessors created by {@link AccessorFactory}.
+ * <p>
+ * With {@link StubFactory.Population#FIELDS} the slots are the declared
+ * fields of the class and of its superclasses instead, found by walking the
+ * hierarchy once, when the plan is computed, and written directly.
+ * <p>
+ * Plans are cached per class in a {@link ClassValue}, which does not prevent
+ * classes (and their class loaders) from being unloaded.
+ *
+ * @author nicu
+ */
+final class StubPlan<T> {
+    /*Plans for factories without custom values or ignored setters*/
+    private static final ClassValue<StubPlan<?>> DEFAULT_PLANS =
+            newCache(new Values(), StubFactory.Population.SETTERS);
+    private static final ClassValue<StubPlan<?>> DEFAULT_FIELD_PLANS =
+            newCache(new Values(), StubFactory.Population.FIELDS);
+    private static final int MAX_SHARED_CACHES = 64;
+    /*Plans of the other factories, shared by those with the same plan key*/
+    private static final Map<Object, ClassValue<StubPlan<?>>> SHARED_PLANS =
+            new LinkedHashMap<Object, ClassValue<StubPlan<?>>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Object, ClassValue<StubPlan<?>>> eldest) {
+                    return size() > MAX_SHARED_CACHES;
+                }
+            };
+
+    enum Instantiation {
+        /**
+         * The no argument constructor
+         */
+        DEFAULT_CONSTRUCTOR,
+        /**
+         * The first of the ranked {@link Instantiator}s that works
+         */
+        OTHER_CONSTRUCTORS
+    }
+
+    private final Class<T> type;
+    private final Instantiation instantiation;
+    private final Constructor<T> defaultConstructor;
+    private final List<Instantiator> instantiators;
+    /*the instantiator that worked last, null until one did*/
+    private volatile Instantiator instantiator;
+    private final boolean cacheable;
+    private final List<Slot> slots;
+
+    private StubPlan(Class<T> type, Values values, StubFactory.Population population) {
+        boolean fields = population == StubFactory.Population.FIELDS;
+        this.type = type;
+        this.defaultConstructor = fields ? findDeclaredDefaultConstructor(type) : findDefaultConstructor(type);
+        this.instantiation = defaultConstructor != null
+                ? Instantiation.DEFAULT_CONSTRUCTOR : Instantiation.OTHER_CONSTRUCTORS;
+        this.instantiators = defaultConstructor != null
+                ? Collections.emptyList() : Instantiator.rank(type, fields);
+        this.cacheable = !(values.isDefaultValueType(type) || Collection.class.isAssignableFrom(type)
+                || Map.class.isAssignableFrom(type));
+        this.slots = Collections.unmodifiableList(fields ? findFieldSlots(type, values) : findSlots(type, values));
+    }
+
+    /**
+     * @return the plans of the factories with these values and population:
+     * the default ones, or the ones of the factories with the same
+     * customized setters, so that creating factories does not discover the
+     * classes again
+     */
+    static ClassValue<StubPlan<?>> cache(Values values, StubFactory.Population population) {
+        if (!values.isCustomized()) {
+            return population == StubFactory.Population.FIELDS ? DEFAULT_FIELD_PLANS : DEFAULT_PLANS;
+        }
+        // plans only ask the values about setter names and types, so the
+        // values of the first factory serve all those with the same key
+        synchronized (SHARED_PLANS) {
+            return SHARED_PLANS.computeIfAbsent(Arrays.asList(population, values.planKey()),
+                    key -> newCache(values, population));
+        }
+    }
+
+    /**
+     * @return the plan of the class for factories without custom values or
+     * ignored setters
+     */
+    @SuppressWarnings("unchecked")
+    static <T> StubPlan<T> of(Class<T> type) {
+        return (StubPlan<T>) DEFAULT_PLANS.get(type);
+    }
+
+    private static ClassValue<StubPlan<?>> newCache(Values values, StubFactory.Population population) {
+        return new ClassValue<StubPlan<?>>() {
+            @Override
+            protected StubPlan<?> computeValue(Class<?> type) {
+                return new StubPlan<>(type, values, population);
+            }
+        };
+    }
+
+    Class<T> getType() {
+        return type;
+    }
+
+    Instantiation getInstantiation() {
+        return instantiation;
+    }
+
+    Constructor<T> getDefaultConstructor() {
+        return defaultConstructor;
+    }
+
+    /**
+     * @return the ways of instantiating the class when it has no default
+     * constructor, best first
+     */
+    List<Instantiator> getInstantiators() {
+        return instantiators;
+    }
+
+    /**
+     * @return the instantiator that worked, to try it first, or null
+     */
+    Instantiator getInstantiator() {
+        return instantiator;
+    }
+
+    void setInstantiator(Instantiator instantiator) {
+        this.instantiator = instantiator;
+    }
+
+    /**
+     * @return if the instances can be reused to stop infinite recursion
+     */
+    boolean isCacheable() {
+        return cacheable;
+    }
+
+    List<Slot> getSlots() {
+        return slots;
+    }
+
+    private static <T> Constructor<T> findDefaultConstructor(Class<T> type) {
+        if (Modifier.isAbstract(type.getModifiers()) || !Modifier.isPublic(type.getModifiers())) {
+            return null;
+        }
+        try {
+            Constructor<T> constructor = type.getDeclaredConstructor();
+            return Modifier.isPublic(constructor.getModifiers()) ? constructor : null;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /*the no argument constructor whatever its visibility, when it can be made accessible*/
+    private static <T> Constructor<T> findDeclaredDefaultConstructor(Class<T> type) {
+        if (Modifier.isAbstract(type.getModifiers())) {
+            return null;
+        }
+        try {
+            Constructor<T> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor;
+        } catch (NoSuchMethodException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static List<Slot> findFieldSlots(Class<?> type, Values values) {
+        Deque<Class<?>> hierarchy = new ArrayDeque<>();
+        for (Class<?> cls = type; cls != null && cls != Object.class; cls = cls.getSuperclass()) {
+            hierarchy.push(cls);
+        }
+        List<Slot> slots = new ArrayList<>();
+        for (Class<?> cls : hierarchy) {
+            for (Field field : cls.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                    continue;
+                }
+                String name = setterName(field.getName());
+                if (values.isIgnoredSetter(name)) {
+                    continue;
+                }
+                try {
+                    field.setAccessible(true);
+                } catch (RuntimeException e) {
+                    continue;// like the fields of the JDK classes, in modules not open to us
+                }
+                Slot.Kind kind = values.isCustomValue(name) ? Slot.Kind.CUSTOM_VALUE
+                        : isPrimitiveValue(field.getType(), values) ? Slot.Kind.PRIMITIVE_VALUE : Slot.Kind.VALUE;
+                slots.add(new Slot(kind, field, name, ResolvedType.of(field.getGenericType(), type)));
+            }
+        }
+        return slots;
+    }
+
+    /*the name of the setter of the field, the inverse of Slot.propertyName*/
+    private static String setterName(String fieldName) {
+        if (fieldName.length() > 1 && Character.isUpperCase(fieldName.charAt(1))) {
+            return "set" + fieldName;
+        }
+        return "set" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+    }
+
+    private static List<Slot> findSlots(Class<?> type, Values values) {
+        Method[] methods = type.getMethods();
+        List<Slot> slots = new ArrayList<>(methods.length);
+        for (Method method : methods) {
+            if (isValid(method)) {
+                String name = method.getName();
+                if (values.isIgnoredSetter(name)) {
+                    continue;
+                }
+                Slot.Kind kind = values.isCustomValue(name) ? Slot.Kind.CUSTOM_VALUE
+                        : isPrimitiveValue(method.getParameterTypes()[0], values)
+                        ? Slot.Kind.PRIMITIVE_VALUE : Slot.Kind.VALUE;
+                slots.add(new Slot(kind, method, ResolvedType.of(method.getGenericParameterTypes()[0], type)));
+            } else if (hasOnlyGetter(method, methods)) {
+                slots.add(new Slot(Slot.Kind.LIST_GETTER, method, ResolvedType.of(method.getGenericReturnType(), type)));
+            }
+        }
+        return slots;
+    }
+
+    /*primitives of a replaced type generator are set boxed, like the other values*/
+    private static boolean isPrimitiveValue(Class<?> type, Values values) {
+        return type.isPrimitive() && values.hasBuiltInGenerator(type);
+    }
+
+    private static boolean isValid(Method method) {
+        return method.getName().startsWith("set") && method.getParameterTypes().length == 1
+                && !method.isSynthetic();
+    }
+
+    private static boolean hasOnlyGetter(Method method, Method[] methods) {
+        String methodName = method.getName();
+        String setterName = methodName.replaceFirst("g", "s");
+        boolean isSpecialPartial = methodName.startsWith("get") &&
+                method.getParameterTypes().length == 0 &&
+                method.getReturnType().equals(List.class);
+        if (isSpecialPartial) {
+            for (Method innerMethod : methods) {
+                if (innerMethod.getName().equals(setterName)) {
+                    isSpecialPartial = false;
+                }
+            }
+        }
+        return isSpecialPartial;
+    }
+
+    /**
+     * One property of the bean that gets a value: either through its setter,
+     * or, for lists exposed only by a getter, by filling the returned list,
+     * or by writing its field. Field slots are named after the setter the
+     * field would have, so that custom values and ignored setters apply to
+     * them too.
+     */
+    static final class Slot {
+        enum Kind {
+            VALUE, PRIMITIVE_VALUE, CUSTOM_VALUE, LIST_GETTER
+        }
+
+        private final Kind kind;
+        private final Method method;
+        private final Field field;
+        private final String name;
+        private final String propertyName;
+        private final ResolvedType resolvedType;
+        private final BiConsumer<Object, Object> setter;
+        private final Function<Object, Object> getter;
+        private final PrimitiveGenerators.Filler filler;
+
+        Slot(Kind kind, Method method, ResolvedType resolvedType) {
+            this.kind = kind;
+            this.method = method;
+            this.field = null;
+            this.name = method.getName();
+            this.propertyName = propertyName(name);
+            this.resolvedType = resolvedType;
+            if (kind == Kind.LIST_GETTER) {
+                this.setter = null;
+                this.getter = AccessorFactory.DEFAULT.getter(method);
+                this.filler = null;
+            } else if (kind == Kind.PRIMITIVE_VALUE) {
+                this.setter = null;
+                this.getter = null;
+                this.filler = PrimitiveGenerators.filler(method);
+            } else {
+                this.setter = AccessorFactory.DEFAULT.setter(method);
+                this.getter = null;
+                this.filler = null;
+            }
+        }
+
+        Slot(Kind kind, Field field, String name, ResolvedType resolvedType) {
+            this.kind = kind;
+            this.method = null;
+            this.field = field;
+            this.name = name;
+            this.propertyName = field.getName();
+            this.resolvedType = resolvedType;
+            this.getter = null;
+            if (kind == Kind.PRIMITIVE_VALUE) {
+                this.setter = null;
+                this.filler = PrimitiveGenerators.filler(field);
+            } else {
+                this.setter = AccessorFactory.setter(field);
+                this.filler = null;
+            }
+        }
+
+        void fill(Object object, RandomGenerator random) {
+            filler.fill(object, random);
+        }
+
+        void set(Object object, Object value) {
+            setter.accept(object, value);
+        }
+
+        Object get(Object object) {
+            return getter.apply(object);
+        }
+
+        Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return the setter or getter, null for field slots
+         */
+        Method getMethod() {
+            return method;
+        }
+
+        /**
+         * @return the field, null for setter and getter slots
+         */
+        Field getField() {
+            return field;
+        }
+
+        /**
+         * @return name of the setter, also for field slots
+         */
+        String getName() {
+            return name;
+        }
+
+        /**
+         * @return name of the property, like for java.beans: setName and
+         * getName give name, setURL gives URL
+         */
+        String getPropertyName() {
+            return propertyName;
+        }
+
+        /**
+         * @return the class of the value, with the type variables resolved
+         * for the class of the plan
+         */
+        Class<?> getType() {
+            return resolvedType.getType();
+        }
+
+        ResolvedType getResolvedType() {
+            return resolvedType;
+        }
+
+        static String propertyName(String methodName) {
+            String name = methodName.substring(3);
+            if (name.isEmpty() || (name.length() > 1 && Character.isUpperCase(name.charAt(1))
+                    && Character.isUpperCase(name.charAt(0)))) {
+                return name;
+            }
+            return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+        }
+    }
+}
@@ -0,0 +1,691 @@
+package org.oss.jstub;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Binary snapshots of stubs, so that large fixtures are generated once and
+ * then reloaded by every test run instead of being generated again. The
+ * properties of a bean are the ones of its {@link StubPlan} that have a
+ * getter, written in the order of the plan; the file lists their names once
+ * per class, so a snapshot is still read after properties are added to or
+ * removed from the class (missing ones keep their default value).
+ * <p>
+ * The file is laid out as:
+ * <pre>
+ * header   magic, version, count, root type, offsets position, types position
+ * records  one per stub, each a tagged value
+ * offsets  position of every record
+ * types    class names, with the property names of the beans
+ * </pre>
+ * A value is a tag followed by its content; beans, collections, maps and
+ * arrays get an index in their record, so an object met twice (like the
+ * instances shared by {@link StubFactory.Sharing#PER_CLASS}, or a cycle) is
+ * written once and then referenced. Values that cannot be read back, like
+ * interface stubs or beans without a public default constructor, are
+ * written as null. Collections and maps are written with their class, and
+ * read back as instances of it created by {@link CollectionFactory}; those of
+ * classes it cannot create, like the unmodifiable views, are read back as the
+ * implementation of their closest JDK interface, and the empty enum maps,
+ * whose key type is not known, as null.
+ * <p>
+ * Reading maps the file in memory and returns a list that decodes a stub
+ * the first time it is accessed, so loading does not depend on the number
+ * of stubs. The list lets go of the mapping once all of its stubs are
+ * decoded, and the JDK unmaps it when it is collected, as there is no way to
+ * unmap it explicitly. Files are limited to 2GB, the size of a mapped buffer.
+ *
+ * @author nicu
+ */
+final class StubSnapshot {
+    private static final int MAGIC = 0x4A535442;// JSTB
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 24;
+
+    private static final byte NULL = 0;
+    private static final byte REFERENCE = 1;
+    private static final byte BOOLEAN = 2;
+    private static final byte BYTE = 3;
+    private static final byte CHAR = 4;
+    private static final byte SHORT = 5;
+    private static final byte INT = 6;
+    private static final byte LONG = 7;
+    private static final byte FLOAT = 8;
+    private static final byte DOUBLE = 9;
+    private static final byte STRING = 10;
+    private static final byte BIG_INTEGER = 11;
+    private static final byte BIG_DECIMAL = 12;
+    private static final byte DATE = 13;
+    private static final byte TIMESTAMP = 14;
+    private static final byte CALENDAR = 15;
+    private static final byte GREGORIAN_CALENDAR = 16;
+    private static final byte XML_GREGORIAN_CALENDAR = 17;
+    private static final byte LOCAL_DATE = 18;
+    private static final byte LOCAL_DATE_TIME = 19;
+    private static final byte INSTANT = 20;
+    private static final byte ENUM = 21;
+    private static final byte ARRAY = 22;
+    private static final byte COLLECTION = 23;
+    private static final byte MAP = 24;
+    private static final byte BEAN = 25;
+
+    private static final ClassValue<Schema> SCHEMAS = new ClassValue<Schema>() {
+        @Override
+        protected Schema computeValue(Class<?> type) {
+            return new Schema(type);
+        }
+    };
+
+    private StubSnapshot() {
+    }
+
+    static void write(Path file, Collection<?> stubs, Class<?> cls) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Encoder encoder = new Encoder(new DataOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(channel), 1 << 16)));
+            int rootType = encoder.typeId(cls);
+            encoder.out.write(new byte[HEADER_SIZE]);
+            int[] offsets = new int[stubs.size()];
+            int count = 0;
+            for (Object stub : stubs) {
+                offsets[count++] = encoder.position();
+                encoder.writeRecord(stub);
+            }
+            int offsetsPosition = encoder.position();
+            for (int offset : offsets) {
+                encoder.out.writeInt(offset);
+            }
+            int typesPosition = encoder.position();
+            encoder.writeTypes();
+            encoder.out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(rootType)
+                    .putInt(offsetsPosition).putInt(typesPosition);
+            ((Buffer) header).flip();
+            channel.write(header, 0);
+        }
+    }
+
+    static <T> List<T> read(Path file, Class<T> cls) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Snapshot bigger than 2GB: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a stub snapshot: " + file);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Unsupported snapshot version " + buffer.getInt(4) + ": " + file);
+        }
+        return new SnapshotList<>(buffer, cls);
+    }
+
+    /**
+     * The properties of a bean class that are written to snapshots
+     */
+    private static final class Schema {
+        private final StubPlan<?> plan;
+        private final List<Property> properties = new ArrayList<>();
+        private final Map<String, Property> byName = new HashMap<>();
+
+        Schema(Class<?> type) {
+            this.plan = StubPlan.of(type);
+            for (StubPlan.Slot slot : plan.getSlots()) {
+                Property property = slot.getKind() == StubPlan.Slot.Kind.LIST_GETTER
+                        ? new Property(slot.getPropertyName(), AccessorFactory.DEFAULT.getter(slot.getMethod()), null)
+                        : Property.of(type, slot);
+                if (property != null) {
+                    properties.add(property);
+                    byName.put(property.name, property);
+                }
+            }
+        }
+
+        /**
+         * @return if beans of the class can be instantiated when read
+         */
+        boolean isReadable() {
+            return plan.getDefaultConstructor() != null;
+        }
+
+        Object newInstance() {
+            try {
+                return plan.getDefaultConstructor().newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException("Cannot instantiate " + plan.getType().getName(), e);
+            }
+        }
+    }
+
+    private static final class Property {
+        private final String name;
+        private final Function<Object, Object> getter;
+        /*null for lists exposed only by a getter, which are filled*/
+        private final BiConsumer<Object, Object> setter;
+
+        Property(String name, Function<Object, Object> getter, BiConsumer<Object, Object> setter) {
+            this.name = name;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        /*null when the setter has no getter*/
+        static Property of(Class<?> type, StubPlan.Slot slot) {
+            Method setter = slot.getMethod();
+            String suffix = setter.getName().substring(3);
+            for (String prefix : new String[]{"get", "is"}) {
+                try {
+                    Method getter = type.getMethod(prefix + suffix);
+                    if (getter.getReturnType() == setter.getParameterTypes()[0]) {
+                        return new Property(slot.getPropertyName(), AccessorFactory.DEFAULT.getter(getter),
+                                AccessorFactory.DEFAULT.setter(setter));
+                    }
+                } catch (NoSuchMethodException e) {
+                    // try the next prefix
+                }
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        void set(Object bean, Object value) {
+            if (setter != null) {
+                setter.accept(bean, value);
+            } else if (value != null) {
+                ((List<Object>) getter.apply(bean)).addAll((List<Object>) value);
+            }
+        }
+    }
+
+    private static final class Encoder {
+        private final DataOutputStream out;
+        private final Map<Class<?>, Integer> typeIds = new HashMap<>();
+        private final List<Class<?>> types = new ArrayList<>();
+        /*objects of the current record, to their index*/
+        private final Map<Object, Integer> references = new IdentityHashMap<>();
+
+        Encoder(DataOutputStream out) {
+            this.out = out;
+        }
+
+        int position() {
+            int position = out.size();
+            if (position == Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Snapshot bigger than 2GB");
+            }
+            return position;
+        }
+
+        int typeId(Class<?> type) {
+            Integer id = typeIds.get(type);
+            if (id == null) {
+                id = types.size();
+                typeIds.put(type, id);
+                types.add(type);
+            }
+            return id;
+        }
+
+        void writeRecord(Object stub) throws IOException {
+            references.clear();
+            writeValue(stub);
+        }
+
+        void writeTypes() throws IOException {
+            out.writeInt(types.size());
+            // beans met while writing the types add their own
+            for (int i = 0; i < types.size(); i++) {
+                Class<?> type = types.get(i);
+                out.writeUTF(type.getName());
+                if (type.isArray() || type.isEnum() || CollectionFactory.isCollection(type)) {
+                    out.writeInt(-1);
+                } else {
+                    List<Property> properties = SCHEMAS.get(type).properties;
+                    out.writeInt(properties.size());
+                    for (Property property : properties) {
+                        out.writeUTF(property.name);
+                    }
+                }
+            }
+        }
+
+        private void writeValue(Object value) throws IOException {
+            if (value == null) {
+                out.writeByte(NULL);
+            } else if (value instanceof Boolean) {
+                out.writeByte(BOOLEAN);
+                out.writeBoolean((Boolean) value);
+            } else if (value instanceof Byte) {
+                out.writeByte(BYTE);
+                out.writeByte((Byte) value);
+            } else if (value instanceof Character) {
+                out.writeByte(CHAR);
+                out.writeChar((Character) value);
+            } else if (value instanceof Short) {
+                out.writeByte(SHORT);
+                out.writeShort((Short) value);
+            } else if (value instanceof Integer) {
+                out.writeByte(INT);
+                out.writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                out.writeByte(LONG);
+                out.writeLong((Long) value);
+            } else if (value instanceof Float) {
+                out.writeByte(FLOAT);
+                out.writeFloat((Float) value);
+            } else if (value instanceof Double) {
+                out.writeByte(DOUBLE);
+                out.writeDouble((Double) value);
+            } else if (value instanceof String) {
+                out.writeByte(STRING);
+                writeString((String) value);
+            } else if (value instanceof Enum) {
+                out.writeByte(ENUM);
+                out.writeInt(typeId(((Enum<?>) value).getDeclaringClass()));
+                out.writeInt(((Enum<?>) value).ordinal());
+            } else if (!writeScalar(value)) {
+                writeObject(value);
+            }
+        }
+
+        private boolean writeScalar(Object value) throws IOException {
+            Class<?> type = value.getClass();
+            if (type == BigInteger.class) {
+                out.writeByte(BIG_INTEGER);
+                writeBytes(((BigInteger) value).toByteArray());
+            } else if (type == BigDecimal.class) {
+                out.writeByte(BIG_DECIMAL);
+                writeBytes(((BigDecimal) value).unscaledValue().toByteArray());
+                out.writeInt(((BigDecimal) value).scale());
+            } else if (type == Date.class) {
+                out.writeByte(DATE);
+                out.writeLong(((Date) value).getTime());
+            } else if (type == Timestamp.class) {
+                out.writeByte(TIMESTAMP);
+                out.writeLong(((Timestamp) value).getTime());
+                out.writeInt(((Timestamp) value).getNanos());
+            } else if (type == GregorianCalendar.class) {
+                out.writeByte(GREGORIAN_CALENDAR);
+                out.writeLong(((Calendar) value).getTimeInMillis());
+            } else if (value instanceof Calendar) {
+                out.writeByte(CALENDAR);
+                out.writeLong(((Calendar) value).getTimeInMillis());
+            } else if (value instanceof XMLGregorianCalendar) {
+                out.writeByte(XML_GREGORIAN_CALENDAR);
+                writeString(((XMLGregorianCalendar) value).toXMLFormat());
+            } else if (type == LocalDate.class) {
+                out.writeByte(LOCAL_DATE);
+                out.writeLong(((LocalDate) value).toEpochDay());
+            } else if (type == LocalDateTime.class) {
+                out.writeByte(LOCAL_DATE_TIME);
+                out.writeLong(((LocalDateTime) value).toEpochSecond(ZoneOffset.UTC));
+                out.writeInt(((LocalDateTime) value).getNano());
+            } else if (type == Instant.class) {
+                out.writeByte(INSTANT);
+                out.writeLong(((Instant) value).getEpochSecond());
+                out.writeInt(((Instant) value).getNano());
+            } else {
+                return false;
+            }
+            return true;
+        }
+
+        private void writeObject(Object value) throws IOException {
+            boolean bean = !value.getClass().isArray() && !(value instanceof Collection) && !(value instanceof Map);
+            Class<?> type = bean ? LazyBean.beanClass(value) : value.getClass();
+            if (bean && (InterfaceImplementation.isImplementation(type) || !SCHEMAS.get(type).isReadable())) {
+                out.writeByte(NULL);// interface stubs, beans built by constructors
+                return;
+            }
+            Class<?> implementation = bean || type.isArray() ? null : CollectionFactory.implementationOf(value);
+            Class<?> enumType = implementation != null ? enumType(value) : null;
+            if ((implementation == EnumSet.class || implementation == EnumMap.class) && enumType == null) {
+                out.writeByte(NULL);
+                return;
+            }
+            Integer reference = references.get(value);
+            if (reference != null) {
+                out.writeByte(REFERENCE);
+                out.writeInt(reference);
+                return;
+            }
+            references.put(value, references.size());
+            if (type.isArray()) {
+                out.writeByte(ARRAY);
+                out.writeInt(typeId(type));
+                int length = Array.getLength(value);
+                out.writeInt(length);
+                for (int i = 0; i < length; i++) {
+                    writeValue(Array.get(value, i));
+                }
+            } else if (value instanceof Collection) {
+                out.writeByte(COLLECTION);
+                writeCollectionType(implementation, enumType);
+                out.writeInt(((Collection<?>) value).size());
+                for (Object element : (Collection<?>) value) {
+                    writeValue(element);
+                }
+            } else if (value instanceof Map) {
+                out.writeByte(MAP);
+                writeCollectionType(implementation, enumType);
+                out.writeInt(((Map<?, ?>) value).size());
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                    writeValue(entry.getKey());
+                    writeValue(entry.getValue());
+                }
+            } else {
+                out.writeByte(BEAN);
+                out.writeInt(typeId(type));
+                for (Property property : SCHEMAS.get(type).properties) {
+                    writeValue(property.getter.apply(value));
+                }
+            }
+        }
+
+        private void writeCollectionType(Class<?> implementation, Class<?> enumType) throws IOException {
+            out.writeInt(typeId(implementation));
+            out.writeInt(enumType != null ? typeId(enumType) : -1);
+        }
+
+        /*the enum of the elements of an enum set, or of the keys of an enum map, if it can be found*/
+        private static Class<?> enumType(Object collection) {
+            Iterator<?> elements;
+            if (collection instanceof EnumSet) {
+                EnumSet<?> set = (EnumSet<?>) collection;
+                elements = (set.isEmpty() ? EnumSet.complementOf(set) : set).iterator();
+            } else if (collection instanceof EnumMap) {
+                elements = ((EnumMap<?, ?>) collection).keySet().iterator();
+            } else {
+                return null;
+            }
+            return elements.hasNext() ? ((Enum<?>) elements.next()).getDeclaringClass() : null;
+        }
+
+        private void writeString(String value) throws IOException {
+            writeBytes(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void writeBytes(byte[] bytes) throws IOException {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Type of the snapshot file, with its properties mapped to the ones of
+     * the loaded class
+     */
+    private static final class Type {
+        private final Class<?> type;
+        private final Schema schema;
+        /*null for the properties the class does not have anymore*/
+        private final Property[] properties;
+
+        Type(Class<?> type, List<String> propertyNames) {
+            this.type = type;
+            this.schema = propertyNames != null ? SCHEMAS.get(type) : null;
+            this.properties = new Property[propertyNames != null ? propertyNames.size() : 0];
+            for (int i = 0; i < properties.length; i++) {
+                properties[i] = schema.byName.get(propertyNames.get(i));
+            }
+        }
+    }
+
+    private static final class SnapshotList<T> extends AbstractList<T> implements RandomAccess {
+        private static final Object NULL_STUB = new Object();
+        /*the mapping, null once all the stubs are decoded*/
+        private volatile ByteBuffer buffer;
+        private final Class<T> cls;
+        private final int size;
+        private final int offsetsPosition;
+        private final Type[] types;
+        /*the decoded stubs, NULL_STUB for the null ones*/
+        private final AtomicReferenceArray<Object> stubs;
+        private final AtomicInteger decoded = new AtomicInteger();
+
+        SnapshotList(ByteBuffer buffer, Class<T> cls) {
+            this.buffer = buffer;
+            this.cls = cls;
+            this.size = buffer.getInt(8);
+            this.offsetsPosition = buffer.getInt(16);
+            this.types = readTypes(buffer.duplicate(), buffer.getInt(20), cls.getClassLoader());
+            Class<?> rootType = types[buffer.getInt(12)].type;
+            if (rootType != cls) {
+                throw new IllegalArgumentException("Snapshot of " + rootType.getName()
+                        + ", not of " + cls.getName());
+            }
+            this.stubs = new AtomicReferenceArray<>(size);
+            if (size == 0) {
+                this.buffer = null;
+            }
+        }
+
+        @Override
+        public T get(int index) {
+            Object stub = stubs.get(index);
+            if (stub == null) {
+                stub = decode(index);
+            }
+            return stub != NULL_STUB ? cls.cast(stub) : null;
+        }
+
+        private Object decode(int index) {
+            ByteBuffer buffer = this.buffer;
+            if (buffer == null) {
+                return stubs.get(index);// the last ones were decoded by another thread meanwhile
+            }
+            ByteBuffer record = buffer.duplicate();
+            ((Buffer) record).position(buffer.getInt(offsetsPosition + 4 * index));
+            Object stub = cls.cast(new Decoder(record, types).readValue());
+            // another thread may have decoded it too, all of them get the first one
+            if (!stubs.compareAndSet(index, null, stub != null ? stub : NULL_STUB)) {
+                return stubs.get(index);
+            }
+            if (decoded.incrementAndGet() == size) {
+                this.buffer = null;
+            }
+            return stub != null ? stub : NULL_STUB;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        private static Type[] readTypes(ByteBuffer buffer, int position, ClassLoader loader) {
+            ((Buffer) buffer).position(position);
+            Type[] types = new Type[buffer.getInt()];
+            for (int i = 0; i < types.length; i++) {
+                String name = readUtf(buffer);
+                int count = buffer.getInt();
+                List<String> propertyNames = count < 0 ? null : new ArrayList<>(count);
+                for (int j = 0; j < count; j++) {
+                    propertyNames.add(readUtf(buffer));
+                }
+                try {
+                    types[i] = new Type(Class.forName(name, false, loader), propertyNames);
+                } catch (ClassNotFoundException e) {
+                    throw new IllegalArgumentException("Class of the snapshot not found: " + name, e);
+                }
+            }
+            return types;
+        }
+
+        /*written by DataOutputStream.writeUTF, only class and property names*/
+        private static String readUtf(ByteBuffer buffer) {
+            byte[] bytes = new byte[buffer.getShort() & 0xffff];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final class Decoder {
+        private final ByteBuffer in;
+        private final Type[] types;
+        /*objects of the record, by index*/
+        private final List<Object> references = new ArrayList<>();
+
+        Decoder(ByteBuffer in, Type[] types) {
+            this.in = in;
+            this.types = types;
+        }
+
+        Object readValue() {
+            byte tag = in.get();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case REFERENCE:
+                    return references.get(in.getInt());
+                case BOOLEAN:
+                    return in.get() != 0;
+                case BYTE:
+                    return in.get();
+                case CHAR:
+                    return in.getChar();
+                case SHORT:
+                    return in.getShort();
+                case INT:
+                    return in.getInt();
+                case LONG:
+                    return in.getLong();
+                case FLOAT:
+                    return in.getFloat();
+                case DOUBLE:
+                    return in.getDouble();
+                case STRING:
+                    return new String(readBytes(), StandardCharsets.UTF_8);
+                case BIG_INTEGER:
+                    return new BigInteger(readBytes());
+                case BIG_DECIMAL:
+                    return new BigDecimal(new BigInteger(readBytes()), in.getInt());
+                case DATE:
+                    return new Date(in.getLong());
+                case TIMESTAMP:
+                    Timestamp timestamp = new Timestamp(in.getLong());
+                    timestamp.setNanos(in.getInt());
+                    return timestamp;
+                case CALENDAR:
+                    Calendar calendar = Calendar.getInstance();
+                    calendar.setTimeInMillis(in.getLong());
+                    return calendar;
+                case GREGORIAN_CALENDAR:
+                    GregorianCalendar gregorianCalendar = new GregorianCalendar();
+                    gregorianCalendar.setTimeInMillis(in.getLong());
+                    return gregorianCalendar;
+                case XML_GREGORIAN_CALENDAR:
+                    return RandomGenerator.datatypeFactory()
+                            .newXMLGregorianCalendar(new String(readBytes(), StandardCharsets.UTF_8));
+                case LOCAL_DATE:
+                    return LocalDate.ofEpochDay(in.getLong());
+                case LOCAL_DATE_TIME:
+                    return LocalDateTime.ofEpochSecond(in.getLong(), in.getInt(), ZoneOffset.UTC);
+                case INSTANT:
+                    return Instant.ofEpochSecond(in.getLong(), in.getInt());
+                case ENUM:
+                    return types[in.getInt()].type.getEnumConstants()[in.getInt()];
+                default:
+                    return readObject(tag);
+            }
+        }
+
+        private Object readObject(byte tag) {
+            switch (tag) {
+                case ARRAY:
+                    Class<?> componentType = types[in.getInt()].type.getComponentType();
+                    Object array = Array.newInstance(componentType, in.getInt());
+                    references.add(array);
+                    for (int i = 0, length = Array.getLength(array); i < length; i++) {
+                        Array.set(array, i, readValue());
+                    }
+                    return array;
+                case COLLECTION:
+                    CollectionFactory collectionFactory = CollectionFactory.of(types[in.getInt()].type);
+                    Class<?> elementType = readEnumType();
+                    int size = in.getInt();
+                    Collection<Object> collection = collectionFactory.newCollection(size, elementType);
+                    references.add(collection);
+                    for (int i = 0; i < size; i++) {
+                        collection.add(readValue());
+                    }
+                    return collection;
+                case MAP:
+                    CollectionFactory mapFactory = CollectionFactory.of(types[in.getInt()].type);
+                    Class<?> keyType = readEnumType();
+                    int entries = in.getInt();
+                    Map<Object, Object> map = mapFactory.newMap(entries, keyType);
+                    references.add(map);
+                    for (int i = 0; i < entries; i++) {
+                        map.put(readValue(), readValue());
+                    }
+                    return map;
+                case BEAN:
+                    Type type = types[in.getInt()];
+                    Object bean = type.schema.newInstance();
+                    references.add(bean);
+                    for (Property property : type.properties) {
+                        Object value = readValue();
+                        if (property != null) {
+                            property.set(bean, value);
+                        }
+                    }
+                    return bean;
+                default:
+                    throw new IllegalArgumentException("Corrupted snapshot, unknown tag " + tag);
+            }
+        }
+
+        private Class<?> readEnumType() {
+            int id = in.getInt();
+            return id >= 0 ? types[id].type : null;
+        }
+
+        private byte[] readBytes() {
+            byte[] bytes = new byte[in.getInt()];
+            in.get(bytes);
+            return bytes;
+        }
+    }
+}
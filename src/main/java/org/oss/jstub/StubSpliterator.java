@@ -0,0 +1,69 @@
+package org.oss.jstub;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Lazily generates the stubs of {@link StubFactory#stream(Class, Class[])},
+ * one per {@link #tryAdvance(Consumer)}. The spliterator covers a range of
+ * stub indexes that is halved on every split, so parallel streams spread the
+ * generation on all their workers; each part gets its own generation context.
+ * The stub with a given index is always generated from the same fork of the
+ * root random generator, however the stream was split. The interned values
+ * are cleared for every stub, as they would otherwise pile up for as long as
+ * the stream is consumed.
+ *
+ * @author nicu
+ */
+final class StubSpliterator<T> implements Spliterator<T> {
+    private final Function<GenerationContext, T> generator;
+    private final Supplier<GenerationContext> contexts;
+    private final RandomGenerator root;
+    private final GenerationContext context;
+    private long index;
+    private final long fence;
+
+    StubSpliterator(Function<GenerationContext, T> generator, Supplier<GenerationContext> contexts,
+                    RandomGenerator root, long index, long fence) {
+        this.generator = generator;
+        this.contexts = contexts;
+        this.root = root;
+        this.context = contexts.get();
+        this.index = index;
+        this.fence = fence;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (index >= fence) {
+            return false;
+        }
+        context.startStub(root.forkSeed(index++));
+        context.clearInterned();
+        action.accept(generator.apply(context));
+        return true;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        long middle = index + (fence - index) / 2;
+        if (middle <= index) {
+            return null;
+        }
+        Spliterator<T> prefix = new StubSpliterator<>(generator, contexts, root, index, middle);
+        index = middle;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return fence - index;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+}
@@ -0,0 +1,509 @@
+package org.oss.jstub;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes stubs as JSON lines or CSV without creating them: the values are
+ * generated while walking the {@link StubPlan} of the class and appended to
+ * a buffer, which goes to the target every {@value #BUFFER_SIZE} characters,
+ * so the memory used does not depend on the number of stubs.
+ * <p>
+ * There are no instances to share, so every property gets new values, like
+ * with {@link StubFactory.Sharing#FRESH}; properties of the type of one of
+ * their ancestors are written as null (JSON) or left out (CSV), and so are
+ * interface properties. In CSV the properties of nested beans are flattened
+ * in columns named after their path, like {@code simplePojo.name}, and
+ * collections, arrays and maps are left out. In JSON, maps with scalar keys
+ * are objects, without the keys generated twice, like the maps of stubs, and
+ * the other maps are arrays of {@code [key, value]} pairs.
+ *
+ * @author nicu
+ */
+final class StubWriter {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Values values;
+    private final ClassValue<StubPlan<?>> plans;
+    private final int collectionSize;
+    private final StubFactory.Format format;
+    private final Target target;
+    private final Class<?> type;
+    private final ResolvedType resolvedType;
+    /*only for CSV*/
+    private final Layout layout;
+    private final StringBuilder buffer = new StringBuilder(BUFFER_SIZE + BUFFER_SIZE / 4);
+
+    StubWriter(Values values, ClassValue<StubPlan<?>> plans, int collectionSize, StubFactory.Format format,
+               Target target, Class<?> type, Class<?>... genericTypes) {
+        this.values = values;
+        this.plans = plans;
+        this.collectionSize = collectionSize;
+        this.format = format;
+        this.target = target;
+        this.type = type;
+        this.resolvedType = ResolvedType.of(type, genericTypes);
+        if (format == StubFactory.Format.CSV) {
+            if (!isScalar(type) && !isBean(type)) {
+                throw new IllegalArgumentException("Cannot write " + type.getName()
+                        + " as CSV, only beans and value types can be");
+            }
+            this.layout = isScalar(type) ? null : layout(type, new ArrayList<>());
+        } else {
+            this.layout = null;
+        }
+    }
+
+    /**
+     * Where the characters go
+     */
+    interface Target {
+        void write(StringBuilder chars) throws IOException;
+    }
+
+    static Target target(Writer writer) {
+        char[] chars = new char[BUFFER_SIZE];
+        return buffer -> {
+            for (int start = 0; start < buffer.length(); start += chars.length) {
+                int end = Math.min(buffer.length(), start + chars.length);
+                buffer.getChars(start, end, chars, 0);
+                writer.write(chars, 0, end - start);
+            }
+        };
+    }
+
+    static Target target(WritableByteChannel channel) {
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        // array backed buffers, the encoder is much faster with them; the
+        // chars are kept in write mode between calls, as a surrogate pair
+        // split between two writes waits for its second char
+        CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+        ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE * 3);
+        return buffer -> {
+            int start = 0;
+            while (start < buffer.length()) {
+                int end = Math.min(buffer.length(), start + chars.remaining());
+                buffer.getChars(start, end, chars.array(), chars.position());
+                // through Buffer, the covariant overrides do not exist on Java 8
+                ((Buffer) chars).position(chars.position() + end - start);
+                start = end;
+                ((Buffer) chars).flip();
+                CoderResult result = encoder.encode(chars, bytes, false);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                chars.compact();
+                ((Buffer) bytes).flip();
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+                ((Buffer) bytes).clear();
+            }
+        };
+    }
+
+    /**
+     * Writes the CSV header line, nothing for JSON lines
+     */
+    void writeHeader() throws IOException {
+        if (format != StubFactory.Format.CSV) {
+            return;
+        }
+        if (layout == null) {
+            buffer.append("value");
+        } else {
+            writeHeader(layout, "", true);
+        }
+        endLine();
+    }
+
+    /**
+     * Writes a stub generated with the given context, on its own line
+     */
+    void write(GenerationContext context) throws IOException {
+        if (format == StubFactory.Format.JSON_LINES) {
+            writeJson(context, resolvedType);
+        } else if (layout == null) {
+            writeCsvValue(generateScalar(context, type));
+        } else {
+            writeCsv(context, layout, true);
+        }
+        endLine();
+    }
+
+    void flush() throws IOException {
+        if (buffer.length() > 0) {
+            target.write(buffer);
+            buffer.setLength(0);
+        }
+    }
+
+    private void endLine() throws IOException {
+        buffer.append('\n');
+        if (buffer.length() >= BUFFER_SIZE) {
+            flush();
+        }
+    }
+
+    private void writeJson(GenerationContext context, ResolvedType type) {
+        Class<?> cls = type.getType();
+        if (cls.isPrimitive() && values.hasBuiltInGenerator(cls)) {
+            appendPrimitive(cls, context.getRandom(), true);
+        } else if (isScalar(cls)) {
+            appendJsonValue(generateScalar(context, cls));
+        } else if (cls.isArray()) {
+            writeJsonArray(context, type.getComponentType());
+        } else if (StubFactory.hasInterface(cls, Map.class)) {
+            writeJsonMap(context, type);
+        } else if (StubFactory.hasInterface(cls, Collection.class)) {
+            writeJsonCollection(context, type);
+        } else if (cls.isInterface()) {
+            buffer.append("null");
+        } else {
+            writeJsonBean(context, plans.get(cls));
+        }
+    }
+
+    private void writeJsonArray(GenerationContext context, ResolvedType componentType) {
+        buffer.append('[');
+        for (int i = 0; i < collectionSize; i++) {
+            if (i > 0) {
+                buffer.append(',');
+            }
+            writeJson(context, componentType);
+        }
+        buffer.append(']');
+    }
+
+    private void writeJsonCollection(GenerationContext context, ResolvedType type) {
+        if (type.getArgumentCount() != 1) {
+            throw new IllegalArgumentException("A collection needs one generic type.");
+        }
+        buffer.append('[');
+        for (int i = 0; i < collectionSize; i++) {
+            if (i > 0) {
+                buffer.append(',');
+            }
+            writeJson(context, type.getArgument(0));
+        }
+        buffer.append(']');
+    }
+
+    private void writeJsonMap(GenerationContext context, ResolvedType type) {
+        if (type.getArgumentCount() != 2) {
+            throw new IllegalArgumentException("A map needs two generic types.");
+        }
+        Class<?> keyType = type.getArgument(0).getType();
+        if (!isScalar(keyType)) {
+            writeJsonEntries(context, type);
+            return;
+        }
+        buffer.append('{');
+        Set<String> keys = new HashSet<>();
+        for (int i = 0; i < collectionSize; i++) {
+            // JSON keys are strings, whatever their type
+            String key = formatScalar(generateScalar(context, keyType));
+            if (!keys.add(key)) {
+                continue;// a map of stubs would have kept one entry too
+            }
+            if (keys.size() > 1) {
+                buffer.append(',');
+            }
+            appendJsonString(key);
+            buffer.append(':');
+            writeJson(context, type.getArgument(1));
+        }
+        buffer.append('}');
+    }
+
+    /*the keys of the map are beans, collections or arrays, which cannot be JSON keys*/
+    private void writeJsonEntries(GenerationContext context, ResolvedType type) {
+        buffer.append('[');
+        for (int i = 0; i < collectionSize; i++) {
+            if (i > 0) {
+                buffer.append(',');
+            }
+            buffer.append('[');
+            writeJson(context, type.getArgument(0));
+            buffer.append(',');
+            writeJson(context, type.getArgument(1));
+            buffer.append(']');
+        }
+        buffer.append(']');
+    }
+
+    private void writeJsonBean(GenerationContext context, StubPlan<?> plan) {
+        if (!context.canGenerate(plan.getType())) {
+            buffer.append("null");
+            return;
+        }
+        context.enter(plan.getType());
+        buffer.append('{');
+        boolean first = true;
+        for (StubPlan.Slot slot : plan.getSlots()) {
+            if (slot.getKind() == StubPlan.Slot.Kind.LIST_GETTER && slot.getResolvedType().getArgumentCount() == 0) {
+                continue;// raw type
+            }
+            if (!first) {
+                buffer.append(',');
+            }
+            first = false;
+            appendJsonString(slot.getPropertyName());
+            buffer.append(':');
+            if (slot.getKind() == StubPlan.Slot.Kind.CUSTOM_VALUE) {
+                appendJsonValue(values.getCustomValue(slot.getName(), context.getRandom()));
+            } else if (slot.getKind() == StubPlan.Slot.Kind.LIST_GETTER) {
+                writeJsonCollection(context, slot.getResolvedType());
+            } else {
+                writeJson(context, slot.getResolvedType());
+            }
+        }
+        buffer.append('}');
+        context.exit();
+    }
+
+    private void writeCsv(GenerationContext context, Layout beanLayout, boolean first) {
+        if (!context.canGenerate(beanLayout.type)) {
+            // the limits are reached, all the columns of the bean are empty
+            for (int i = first ? 1 : 0; i < beanLayout.width; i++) {
+                buffer.append(',');
+            }
+            return;
+        }
+        context.enter(beanLayout.type);
+        for (Column column : beanLayout.columns) {
+            if (column.nested != null) {
+                writeCsv(context, column.nested, first);
+            } else {
+                if (!first) {
+                    buffer.append(',');
+                }
+                StubPlan.Slot slot = column.slot;
+                if (slot.getKind() == StubPlan.Slot.Kind.CUSTOM_VALUE) {
+                    writeCsvValue(values.getCustomValue(slot.getName(), context.getRandom()));
+                } else if (slot.getKind() == StubPlan.Slot.Kind.PRIMITIVE_VALUE) {
+                    appendPrimitive(slot.getType(), context.getRandom(), false);
+                } else {
+                    writeCsvValue(generateScalar(context, slot.getType()));
+                }
+            }
+            first = false;
+        }
+        context.exit();
+    }
+
+    private void writeHeader(Layout beanLayout, String prefix, boolean first) {
+        for (Column column : beanLayout.columns) {
+            if (column.nested != null) {
+                writeHeader(column.nested, prefix + column.name + ".", first);
+            } else {
+                if (!first) {
+                    buffer.append(',');
+                }
+                appendCsvString(prefix + column.name);
+            }
+            first = false;
+        }
+    }
+
+    /*the columns of a bean, without the properties whose type is on the path*/
+    private Layout layout(Class<?> beanType, List<Class<?>> path) {
+        path.add(beanType);
+        List<Column> columns = new ArrayList<>();
+        int width = 0;
+        for (StubPlan.Slot slot : plans.get(beanType).getSlots()) {
+            Class<?> slotType = slot.getType();
+            if (slot.getKind() == StubPlan.Slot.Kind.CUSTOM_VALUE || slotType.isPrimitive() || isScalar(slotType)) {
+                columns.add(new Column(slot, slot.getPropertyName(), null));
+                width++;
+            } else if (slot.getKind() != StubPlan.Slot.Kind.LIST_GETTER && isBean(slotType)
+                    && !path.contains(slotType)) {
+                Layout nested = layout(slotType, path);
+                if (nested.width > 0) {
+                    columns.add(new Column(slot, slot.getPropertyName(), nested));
+                    width += nested.width;
+                }
+            }
+        }
+        path.remove(path.size() - 1);
+        return new Layout(beanType, Collections.unmodifiableList(columns), width);
+    }
+
+    private Object generateScalar(GenerationContext context, Class<?> cls) {
+        if (cls.isEnum()) {
+            Object[] constants = cls.getEnumConstants();
+            return constants[context.getRandom().nextInt(constants.length)];
+        }
+        return values.randomDefaultValue(cls, context.getRandom());
+    }
+
+    /*appends a generated primitive, without boxing it*/
+    private void appendPrimitive(Class<?> cls, RandomGenerator random, boolean json) {
+        if (cls == boolean.class) {
+            buffer.append(PrimitiveGenerators.BOOLEAN.next(random));
+        } else if (cls == byte.class) {
+            buffer.append(PrimitiveGenerators.BYTE.next(random));
+        } else if (cls == char.class) {
+            char c = PrimitiveGenerators.CHAR.next(random);
+            if (json) {
+                buffer.append('"').append(c).append('"');
+            } else {
+                buffer.append(c);
+            }
+        } else if (cls == short.class) {
+            buffer.append(PrimitiveGenerators.SHORT.next(random));
+        } else if (cls == int.class) {
+            buffer.append(PrimitiveGenerators.INT.next(random));
+        } else if (cls == long.class) {
+            buffer.append(PrimitiveGenerators.LONG.next(random));
+        } else if (cls == float.class) {
+            buffer.append(PrimitiveGenerators.FLOAT.next(random));
+        } else {
+            buffer.append(PrimitiveGenerators.DOUBLE.next(random));
+        }
+    }
+
+    private void appendJsonValue(Object value) {
+        if (value == null) {
+            buffer.append("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            buffer.append(value);
+        } else {
+            appendJsonString(formatScalar(value));
+        }
+    }
+
+    private void appendJsonString(String value) {
+        buffer.append('"');
+        int escaped = 0;
+        while (escaped < value.length() && !needsEscape(value.charAt(escaped))) {
+            escaped++;
+        }
+        if (escaped == value.length()) {
+            buffer.append(value).append('"');
+            return;
+        }
+        buffer.append(value, 0, escaped);
+        for (int i = escaped; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                buffer.append('\\').append(c);
+            } else if (c == '\n') {
+                buffer.append("\\n");
+            } else if (c < 0x20) {
+                buffer.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xf]);
+            } else {
+                buffer.append(c);
+            }
+        }
+        buffer.append('"');
+    }
+
+    private static boolean needsEscape(char c) {
+        return c == '"' || c == '\\' || c < 0x20;
+    }
+
+    private void writeCsvValue(Object value) {
+        if (value == null) {
+            return;
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            buffer.append(value);
+        } else {
+            appendCsvString(formatScalar(value));
+        }
+    }
+
+    private void appendCsvString(String value) {
+        boolean quoted = false;
+        for (int i = 0; i < value.length() && !quoted; i++) {
+            char c = value.charAt(i);
+            quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quoted) {
+            buffer.append(value);
+            return;
+        }
+        buffer.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                buffer.append('"');
+            }
+            buffer.append(c);
+        }
+        buffer.append('"');
+    }
+
+    private static String formatScalar(Object value) {
+        if (value == null) {
+            return "null";
+        }
+        if (value instanceof Enum) {
+            return ((Enum<?>) value).name();
+        }
+        if (value instanceof Date) {
+            return Instant.ofEpochMilli(((Date) value).getTime()).toString();
+        }
+        if (value instanceof Calendar) {
+            return Instant.ofEpochMilli(((Calendar) value).getTimeInMillis()).toString();
+        }
+        if (value instanceof XMLGregorianCalendar) {
+            return ((XMLGregorianCalendar) value).toXMLFormat();
+        }
+        return value.toString();
+    }
+
+    private boolean isScalar(Class<?> cls) {
+        return cls.isPrimitive() || cls.isEnum() || values.isDefaultValueType(cls);
+    }
+
+    private static boolean isBean(Class<?> cls) {
+        return !(cls.isArray() || cls.isInterface() || cls.isPrimitive()
+                || StubFactory.hasInterface(cls, Collection.class) || StubFactory.hasInterface(cls, Map.class));
+    }
+
+    private static final class Layout {
+        private final Class<?> type;
+        private final List<Column> columns;
+        private final int width;
+
+        Layout(Class<?> type, List<Column> columns, int width) {
+            this.type = type;
+            this.columns = columns;
+            this.width = width;
+        }
+    }
+
+    private static final class Column {
+        private final StubPlan.Slot slot;
+        private final String name;
+        /*null for a value, the columns of the bean otherwise*/
+        private final Layout nested;
+
+        Column(StubPlan.Slot slot, String name, Layout nested) {
+            this.slot = slot;
+            this.name = name;
+            this.nested = nested;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.oss.jstub;
+
+import java.util.function.Function;
+
+/**
+ * Generates the random values of one type, like {@code UUID} or a money
+ * class of the application, which are then used for every property,
+ * collection element or map entry of that type, instead of stubbing it as
+ * a bean. Custom values of a setter still take precedence.
+ * <p>
+ * Generators are given to {@link StubFactory.CustomValuesBuilder#addTypeGenerator},
+ * or registered for all the factories in a
+ * {@code META-INF/services/org.oss.jstub.TypeGenerator} file, read by
+ * {@link java.util.ServiceLoader} the first time a factory is created; both
+ * replace the built-in generator of the same type. A generator is shared by
+ * all the threads of a factory, so it must only use the random generator it
+ * is given, which also keeps seeded factories reproducible.
+ * <p>
+ * A generator of a primitive type, like {@code int.class}, replaces the
+ * built-in one for the properties and arrays of that type, which are then
+ * set from its boxed values, so it must not return null; the wrapper type,
+ * like {@code Integer.class}, has a generator of its own.
+ * <pre class="code">
+ * {@code
+ * StubFactory stubFactory = StubFactory.builder()
+ *         .addTypeGenerator(TypeGenerator.of(UUID.class,
+ *                 random -> new UUID(random.nextLong(), random.nextLong())))
+ *         .build();
+ * }
+ * </pre>
+ *
+ * @author nicu
+ */
+public interface TypeGenerator<T> {
+
+    /**
+     * @return the type of the generated values, matched exactly against the
+     * types of the properties
+     */
+    Class<T> getType();
+
+    T generate(RandomGenerator random);
+
+    static <T> TypeGenerator<T> of(Class<T> type, Function<RandomGenerator, ? extends T> generator) {
+        if (type == null || generator == null) {
+            throw new IllegalArgumentException("Type and generator not allowed to be null");
+        }
+        return new TypeGenerator<T>() {
+            @Override
+            public Class<T> getType() {
+                return type;
+            }
+
+            @Override
+            public T generate(RandomGenerator random) {
+                return generator.apply(random);
+            }
+        };
+    }
+}
@@ -0,0 +1,184 @@
+package org.oss.jstub;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Immutable registry of the {@link TypeGenerator}s of a factory: the
+ * built-in ones, listed here once instead of being discovered among the
+ * methods of {@link RandomGenerator}, then the ones found by
+ * {@link ServiceLoader}, then the ones given to the builder, each replacing
+ * the previous generator of its type. The default registry is built once
+ * and shared by all the factories without their own generators.
+ * <p>
+ * Lookups go through a {@link ClassValue}, which keeps the result on the
+ * class itself instead of hashing it in a map for every value. Registries
+ * are interned per generator list, so factories built with the same
+ * generators share the registry and its dispatch instead of filling a new
+ * one each.
+ *
+ * @author nicu
+ */
+final class TypeGenerators {
+    /*marks the types without generator, ClassValue needs a value*/
+    private static final TypeGenerator<?> NONE = TypeGenerator.of(Void.class, random -> null);
+    private static final Map<Class<?>, TypeGenerator<?>> BUILT_IN = builtIn();
+    private static final int MAX_SHARED_REGISTRIES = 64;
+    /*Registries with added generators, keyed by the registry they extend and the added generators*/
+    private static final Map<Object, TypeGenerators> SHARED_REGISTRIES =
+            new LinkedHashMap<Object, TypeGenerators>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Object, TypeGenerators> eldest) {
+                    return size() > MAX_SHARED_REGISTRIES;
+                }
+            };
+    static final TypeGenerators DEFAULT = new TypeGenerators(BUILT_IN).with(serviceGenerators());
+
+    private final Map<Class<?>, TypeGenerator<?>> generators;
+    private final ClassValue<TypeGenerator<?>> dispatch = new ClassValue<TypeGenerator<?>>() {
+        @Override
+        protected TypeGenerator<?> computeValue(Class<?> type) {
+            return generators.getOrDefault(type, NONE);
+        }
+    };
+
+    private TypeGenerators(Map<Class<?>, TypeGenerator<?>> generators) {
+        this.generators = generators;
+    }
+
+    /**
+     * @return registry with the given generators added to these, or this
+     * one if there are none; the same registry is returned for the same
+     * generators, in the same order
+     */
+    TypeGenerators with(Collection<? extends TypeGenerator<?>> added) {
+        if (added.isEmpty()) {
+            return this;
+        }
+        synchronized (SHARED_REGISTRIES) {
+            return SHARED_REGISTRIES.computeIfAbsent(Arrays.asList(this, new ArrayList<>(added)),
+                    key -> extend(added));
+        }
+    }
+
+    private TypeGenerators extend(Collection<? extends TypeGenerator<?>> added) {
+        Map<Class<?>, TypeGenerator<?>> copy = new HashMap<>(generators);
+        for (TypeGenerator<?> generator : added) {
+            copy.put(generator.getType(), generator);
+        }
+        return new TypeGenerators(Collections.unmodifiableMap(copy));
+    }
+
+    /**
+     * @return the generator of exactly this type, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    <T> TypeGenerator<T> get(Class<T> type) {
+        TypeGenerator<?> generator = dispatch.get(type);
+        return generator == NONE ? null : (TypeGenerator<T>) generator;
+    }
+
+    boolean contains(Class<?> type) {
+        return dispatch.get(type) != NONE;
+    }
+
+    /**
+     * @return if the type is generated by the built-in generator, the only
+     * ones that primitive values are generated by without being boxed
+     */
+    boolean isBuiltIn(Class<?> type) {
+        TypeGenerator<?> generator = BUILT_IN.get(type);
+        return generator != null && dispatch.get(type) == generator;
+    }
+
+    /**
+     * @return the types the default registry has no generator for, which
+     * are then not stubbed as beans
+     */
+    Set<Class<?>> addedTypes() {
+        if (this == DEFAULT) {
+            return Collections.emptySet();
+        }
+        Set<Class<?>> types = new HashSet<>(generators.keySet());
+        types.removeAll(DEFAULT.generators.keySet());
+        return types;
+    }
+
+    /**
+     * @return the primitive types whose generator is not the built-in one,
+     * which are then set like the other values instead of unboxed
+     */
+    Set<Class<?>> replacedPrimitives() {
+        Set<Class<?>> types = new HashSet<>();
+        for (Class<?> type : generators.keySet()) {
+            if (type.isPrimitive() && !isBuiltIn(type)) {
+                types.add(type);
+            }
+        }
+        return types;
+    }
+
+    private static Collection<TypeGenerator<?>> serviceGenerators() {
+        Collection<TypeGenerator<?>> generators = new ArrayList<>();
+        for (TypeGenerator<?> generator : ServiceLoader.load(TypeGenerator.class)) {
+            generators.add(generator);
+        }
+        return generators;
+    }
+
+    private static Map<Class<?>, TypeGenerator<?>> builtIn() {
+        Map<Class<?>, TypeGenerator<?>> generators = new HashMap<>();
+        add(generators, boolean.class, RandomGenerator::nextBoolean);
+        add(generators, Boolean.class, RandomGenerator::nextBoolean);
+        add(generators, char.class, RandomGenerator::nextChar);
+        add(generators, Character.class, RandomGenerator::nextCharacter);
+        add(generators, byte.class, RandomGenerator::nextByte);
+        add(generators, Byte.class, RandomGenerator::nextByteObj);
+        add(generators, short.class, RandomGenerator::nextShort);
+        add(generators, Short.class, RandomGenerator::nextShortObj);
+        add(generators, int.class, RandomGenerator::nextInt);
+        add(generators, Integer.class, RandomGenerator::nextInteger);
+        add(generators, long.class, RandomGenerator::nextLong);
+        add(generators, Long.class, RandomGenerator::nextLongObj);
+        add(generators, float.class, RandomGenerator::nextFloat);
+        add(generators, Float.class, RandomGenerator::nextFloatObj);
+        add(generators, double.class, RandomGenerator::nextDouble);
+        add(generators, Double.class, RandomGenerator::nextDoubleObj);
+        add(generators, String.class, RandomGenerator::nextAlphabeticString);
+        add(generators, BigInteger.class, RandomGenerator::nextBigInteger);
+        add(generators, BigDecimal.class, RandomGenerator::nextBigDecimal);
+        add(generators, Date.class, RandomGenerator::nextDate);
+        add(generators, Timestamp.class, RandomGenerator::nextTimestamp);
+        add(generators, Calendar.class, RandomGenerator::nextCalendar);
+        add(generators, GregorianCalendar.class, RandomGenerator::nextGregorianCalendar);
+        add(generators, XMLGregorianCalendar.class, RandomGenerator::nextXmlGregorianCalendar);
+        add(generators, LocalDate.class, RandomGenerator::nextLocalDate);
+        add(generators, LocalDateTime.class, RandomGenerator::nextLocalDateTime);
+        add(generators, Instant.class, RandomGenerator::nextInstant);
+        return Collections.unmodifiableMap(generators);
+    }
+
+    private static <T> void add(Map<Class<?>, TypeGenerator<?>> generators, Class<T> type,
+                                Function<RandomGenerator, ? extends T> generator) {
+        generators.put(type, TypeGenerator.of(type, generator));
+    }
+}
@@ -1,83 +1,82 @@
 package org.oss.jstub;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Supplier;
 
 /**
- * The values for the fields are generated here
+ * The values for the fields are generated here, from the random generator
+ * of the generation that asks for them
  *
  * @author nicu
  */
 final class Values {
-    private final RandomGenerator randomGenerator;
+    /*default value types that can be shared, the dates and calendars are mutable*/
+    private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<>(Arrays.asList(
+            String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class,
+            Long.class, Float.class, Double.class, BigInteger.class, BigDecimal.class,
+            LocalDate.class, LocalDateTime.class, Instant.class));
+
     private final Map<String, Object[]> customValues;
     private final Map<String, Supplier<?>> customSuppliers;
-    private final Map<Class<?>, Supplier<?>> defaultValues;
+    private final TypeGenerators generators;
     private final Set<String> ignoredSetters;
 
     Values() {
-        randomGenerator = new RandomGenerator();
-        defaultValues = defaultValuesMap();
+        generators = TypeGenerators.DEFAULT;
         customValues = Collections.emptyMap();
         customSuppliers = Collections.emptyMap();
         ignoredSetters = Collections.emptySet();
     }
 
     Values(Map<String, Object[]> customValues, Map<String, Supplier<?>> customSuppliers,
-           Set<String> ignoredSetters) {
-        randomGenerator = new RandomGenerator();
-        defaultValues = defaultValuesMap();
-        this.customValues = customValues;
-        this.customSuppliers = customSuppliers;
-        this.ignoredSetters = ignoredSetters;
-    }
-
-    private Map<Class<?>, Supplier<?>> defaultValuesMap() {
-        Map<Class<?>, Supplier<?>> supplierMap = new HashMap<>();
-        Class<RandomGenerator> clz = RandomGenerator.class;
-        for (Method method : clz.getMethods()) {
-            if (method.getName().startsWith("next") && method.getParameterCount() == 0) {
-                Class<?> returnType = method.getReturnType();
-                Supplier<?> supplier = safeSupplier(method, randomGenerator, "Cannot create default values");
-                supplierMap.putIfAbsent(returnType, supplier);
-            }
-        }
-        return supplierMap;
+           Set<String> ignoredSetters, TypeGenerators generators) {
+        this.generators = generators;
+        // copied, the stub plans cached for these values must not go stale
+        this.customValues = new HashMap<>(customValues);
+        this.customSuppliers = new HashMap<>(customSuppliers);
+        this.ignoredSetters = new HashSet<>(ignoredSetters);
     }
 
-    private Supplier<?> safeSupplier(Method method, Object invocation, String message) {
-        return () -> {
-            try {
-                return method.invoke(invocation);
-            } catch (IllegalAccessException | InvocationTargetException e) {
-                throw new IllegalStateException(message, e);
-            }
-        };
+    Object randomDefaultValue(Class<?> clz, RandomGenerator random) {
+        return generators.get(clz).generate(random);
     }
 
-    RandomGenerator getRandomGenerator() {
-        return randomGenerator;
+    TypeGenerator<?> defaultValueGenerator(Class<?> clz) {
+        return generators.get(clz);
     }
 
-    Object randomDefaultValue(Class<?> clz) {
-        return defaultValues.get(clz).get();
-    }
-
-    Object getCustomValue(String methodName) {
+    Object getCustomValue(String methodName, RandomGenerator random) {
         if (customSuppliers.containsKey(methodName)) {
             return customSuppliers.get(methodName).get();
         }
         Object[] values = customValues.get(methodName);
-        return values[randomGenerator.nextInt(values.length)];
+        return values[random.nextInt(values.length)];
     }
 
     boolean isDefaultValueType(Class<?> parameterType) {
-        return defaultValues.containsKey(parameterType);
+        return generators.contains(parameterType);
+    }
+
+    /**
+     * @return if the primitive values of the type can be generated straight
+     * from the random generator, as no type generator replaces it
+     */
+    boolean hasBuiltInGenerator(Class<?> type) {
+        return generators.isBuiltIn(type);
+    }
+
+    static boolean isImmutable(Class<?> type) {
+        return IMMUTABLE_TYPES.contains(type);
     }
 
     boolean isCustomValue(String methodName) {
@@ -88,4 +87,20 @@ final class Values {
     boolean isIgnoredSetter(String setterName) {
         return ignoredSetters.contains(setterName);
     }
+
+    boolean isCustomized() {
+        return !(customValues.isEmpty() && customSuppliers.isEmpty() && ignoredSetters.isEmpty())
+                || !generators.addedTypes().isEmpty() || !generators.replacedPrimitives().isEmpty();
+    }
+
+    /**
+     * @return what the stub plans depend on: equal keys give equal plans,
+     * whatever the custom values themselves
+     */
+    Object planKey() {
+        Set<String> customSetters = new HashSet<>(customValues.keySet());
+        customSetters.addAll(customSuppliers.keySet());
+        return Arrays.asList(customSetters, ignoredSetters, generators.addedTypes(),
+                generators.replacedPrimitives());
+    }
 }
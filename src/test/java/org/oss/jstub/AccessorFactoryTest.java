@@ -0,0 +1,77 @@
+package org.oss.jstub;
+
+import org.junit.Test;
+import org.oss.jstub.pojo.FullPojo;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AccessorFactoryTest {
+
+    @Test
+    public void testAllFactoriesCallSetters() throws NoSuchMethodException {
+        Method setAnInt = FullPojo.class.getMethod("setAnInt", int.class);
+        Method setString = FullPojo.class.getMethod("setString", String.class);
+        for (AccessorFactory factory : AccessorFactory.values()) {
+            FullPojo pojo = new FullPojo();
+            factory.setter(setAnInt).accept(pojo, 42);
+            factory.setter(setString).accept(pojo, "value");
+            assertEquals(factory.name(), 42, pojo.getAnInt());
+            assertEquals(factory.name(), "value", pojo.getString());
+        }
+    }
+
+    @Test
+    public void testAllFactoriesCallGetters() throws NoSuchMethodException {
+        Method getStringList = FullPojo.class.getMethod("getStringList");
+        List<String> list = Collections.singletonList("value");
+        FullPojo pojo = new FullPojo();
+        pojo.setStringList(list);
+        for (AccessorFactory factory : AccessorFactory.values()) {
+            assertEquals(factory.name(), list, factory.getter(getStringList).apply(pojo));
+        }
+    }
+
+    @Test
+    public void testFactoryByName() {
+        assertEquals(AccessorFactory.LAMBDA_METAFACTORY, AccessorFactory.of(null));
+        assertEquals(AccessorFactory.METHOD_HANDLE, AccessorFactory.of("METHOD_HANDLE"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownFactoryName() {
+        AccessorFactory.of("ASM");
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testSetterExceptionIsNotWrapped() throws NoSuchMethodException {
+        Method setAnInt = FullPojo.class.getMethod("setAnInt", int.class);
+        AccessorFactory.DEFAULT.setter(setAnInt).accept(new FullPojo(), null);
+    }
+
+    @Test
+    public void testTypedSetter() throws NoSuchMethodException {
+        Method setAnInt = FullPojo.class.getMethod("setAnInt", int.class);
+        Object setter = AccessorFactory.DEFAULT.typedSetter(setAnInt, PrimitiveGenerators.IntSetter.class);
+        assertTrue(setter instanceof PrimitiveGenerators.IntSetter);
+        FullPojo pojo = new FullPojo();
+        ((PrimitiveGenerators.IntSetter) setter).set(pojo, 42);
+        assertEquals(42, pojo.getAnInt());
+        assertNull(AccessorFactory.REFLECTION.typedSetter(setAnInt, PrimitiveGenerators.IntSetter.class));
+    }
+
+    @Test
+    public void testPrimitiveFiller() throws NoSuchMethodException {
+        RandomGenerator random = new RandomGenerator(1);
+        FullPojo pojo = new FullPojo();
+        PrimitiveGenerators.filler(FullPojo.class.getMethod("setaLong", long.class)).fill(pojo, random);
+        PrimitiveGenerators.filler(FullPojo.class.getMethod("setaChar", char.class)).fill(pojo, random);
+        assertEquals(new RandomGenerator(1).nextLong(), pojo.getaLong());
+        assertTrue(Character.isLetter(pojo.getaChar()));
+    }
+}
@@ -0,0 +1,84 @@
+package org.oss.jstub;
+
+import org.junit.Test;
+import org.oss.jstub.pojo.SimplePojo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StringGeneratorTest {
+
+    @Test
+    public void testAlphabeticStringUsesAllLetters() {
+        RandomGenerator random = new RandomGenerator(1);
+        Set<Character> letters = new TreeSet<>();
+        for (int i = 0; i < 1000; i++) {
+            String string = random.nextAlphabeticString();
+            assertEquals(5, string.length());
+            for (char c : string.toCharArray()) {
+                letters.add(c);
+            }
+        }
+        assertEquals(52, letters.size());
+        assertTrue(letters.contains('z') && letters.contains('Z'));
+    }
+
+    @Test
+    public void testLengths() {
+        StringGenerator strings = StringGenerator.builder()
+                .alphabet(Alphabet.DIGITS)
+                .length(0, 3)
+                .build();
+        RandomGenerator random = new RandomGenerator(2);
+        Set<Integer> lengths = new TreeSet<>();
+        for (int i = 0; i < 200; i++) {
+            String string = strings.next(random);
+            assertTrue(string, string.matches("[0-9]*"));
+            lengths.add(string.length());
+        }
+        assertEquals(new TreeSet<>(Arrays.asList(0, 1, 2, 3)), lengths);
+    }
+
+    @Test
+    public void testUnicodeRanges() {
+        Alphabet alphabet = Alphabet.range(0x4E00, 0x9FFF).union(Alphabet.range(0x1F600, 0x1F64F));
+        StringGenerator strings = StringGenerator.builder().alphabet(alphabet).length(50).build();
+        String string = strings.next(new RandomGenerator(3));
+        assertEquals(50, string.codePointCount(0, string.length()));
+        string.codePoints().forEach(c -> assertTrue(Integer.toHexString(c),
+                (c >= 0x4E00 && c <= 0x9FFF) || (c >= 0x1F600 && c <= 0x1F64F)));
+        assertEquals("aaa", Alphabet.of("a").nextString(new RandomGenerator(4), 3));
+    }
+
+    @Test
+    public void testPool() {
+        StubFactory stubFactory = StubFactory.builder()
+                .strings(StringGenerator.builder().length(8).pool(4).build())
+                .build();
+        List<SimplePojo> pojos = stubFactory.createStubCollection(100, ArrayList::new, SimplePojo.class);
+        Set<String> names = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (SimplePojo pojo : pojos) {
+            assertEquals(8, pojo.getName().length());
+            names.add(pojo.getName());
+        }
+        assertEquals(4, names.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSurrogates() {
+        Alphabet.range(0xD000, 0xE000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidLengths() {
+        StringGenerator.builder().length(3, 2);
+    }
+}
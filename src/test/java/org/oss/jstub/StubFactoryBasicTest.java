@@ -1,15 +1,19 @@
 package org.oss.jstub;
 
+import org.junit.Assert;
 import org.junit.Test;
 import org.oss.jstub.pojo.BasicEnum;
 import org.oss.jstub.pojo.BasicInterface;
 import org.oss.jstub.pojo.FullPojo;
+import org.oss.jstub.pojo.SimplePojo;
 
 import java.util.*;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.oss.jstub.TestUtil.assertAllFieldsNotNull;
+import static org.oss.jstub.StubFactory.Population.SETTERS;
 
 public class StubFactoryBasicTest {
 
@@ -80,4 +84,25 @@ public class StubFactoryBasicTest {
         assertEquals(collectionSize, pojo.getStringList().size());
         assertEquals(collectionSize, pojo.getMap().size());
     }
+
+    @Test
+    public void testPlanIsComputedOncePerClass() {
+        ClassValue<StubPlan<?>> plans = StubPlan.cache(new Values(), SETTERS);
+        assertSame(plans.get(FullPojo.class), StubPlan.cache(new Values(), SETTERS).get(FullPojo.class));
+        assertEquals(24, plans.get(FullPojo.class).getSlots().size());
+    }
+
+    @Test
+    public void testArrays() {
+        int collectionSize = 13;
+        StubFactory stubFactory = StubFactory.get(collectionSize);
+        assertEquals(collectionSize, stubFactory.createStub(byte[].class).length);
+        assertEquals(collectionSize, stubFactory.createStub(char[].class).length);
+        assertEquals(collectionSize, stubFactory.createStub(double[].class).length);
+        SimplePojo[] pojos = stubFactory.createStub(SimplePojo[].class);
+        assertEquals(collectionSize, pojos.length);
+        Arrays.stream(pojos).forEach(TestUtil::assertAllFieldsNotNull);
+        Integer[] integers = stubFactory.createStub(Integer[].class);
+        Arrays.stream(integers).forEach(Assert::assertNotNull);
+    }
 }
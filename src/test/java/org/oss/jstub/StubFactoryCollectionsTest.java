@@ -0,0 +1,101 @@
+package org.oss.jstub;
+
+import org.junit.Test;
+import org.oss.jstub.pojo.CollectionsPojo;
+import org.oss.jstub.pojo.FullPojo;
+import org.oss.jstub.pojo.SimplePojo;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StubFactoryCollectionsTest {
+
+    @Test
+    public void testDeclaredImplementations() {
+        for (StubFactory.Engine engine : StubFactory.Engine.values()) {
+            CollectionsPojo stub = StubFactory.builder().engine(engine).createStub(CollectionsPojo.class);
+            assertEquals(StubFactory.DEFAULT_COLLECTION_SIZE, stub.getTreeMap().size());
+            assertEquals(StubFactory.DEFAULT_COLLECTION_SIZE, stub.getLinkedList().size());
+            assertTrue(stub.getEnumSet().size() > 0);
+            assertTrue(stub.getEnumMap().size() > 0);
+            assertEquals(StubFactory.DEFAULT_COLLECTION_SIZE, stub.getConcurrentMap().size());
+            assertNotNull(stub.getConcurrentMap().values().iterator().next().getName());
+            assertEquals(ArrayDeque.class, stub.getDeque().getClass());
+            assertEquals(StubFactory.DEFAULT_COLLECTION_SIZE, stub.getDeque().size());
+            assertEquals(TreeSet.class, stub.getSortedSet().getClass());
+            assertEquals(TreeMap.class, stub.getNavigableMap().getClass());
+            assertEquals(StubFactory.DEFAULT_COLLECTION_SIZE, stub.getQueue().size());
+            assertEquals(StubFactory.DEFAULT_COLLECTION_SIZE, stub.getArrayList().size());
+            assertEquals(StubFactory.DEFAULT_COLLECTION_SIZE, stub.getLinkedHashSet().size());
+        }
+    }
+
+    @Test
+    public void testTopLevelImplementations() {
+        TreeMap<String, Integer> treeMap = StubFactory.get().createStub(TreeMap.class, String.class, Integer.class);
+        assertEquals(StubFactory.DEFAULT_COLLECTION_SIZE, treeMap.size());
+        Set<String> strings = StubFactory.get(100).createStub(Set.class, String.class);
+        assertEquals(100, strings.size());
+    }
+
+    @Test
+    public void testSortedCollectionsOfNonComparableTypes() {
+        for (Class<?> type : Arrays.asList(TreeSet.class, SortedSet.class, TreeMap.class)) {
+            try {
+                if (type == TreeMap.class) {
+                    StubFactory.get().createStub(type, SimplePojo.class, String.class);
+                } else {
+                    StubFactory.get().createStub(type, SimplePojo.class);
+                }
+                fail("SimplePojo is not Comparable");
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains(type.getName()));
+            }
+        }
+    }
+
+    @Test
+    public void testImmutableCollections() {
+        FullPojo stub = StubFactory.builder().immutableCollections().createStub(FullPojo.class);
+        assertUnmodifiable(stub.getStringList());
+        assertUnmodifiable(stub.getDateSet());
+        assertEquals(StubFactory.DEFAULT_COLLECTION_SIZE, stub.getStringList().size());
+        try {
+            stub.getMap().clear();
+            fail("The map should not be modifiable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        List<String> single = StubFactory.builder(1).immutableCollections().createStub(List.class, String.class);
+        assertEquals(Collections.singletonList(single.get(0)), single);
+        Map<String, Integer> empty = StubFactory.builder(0).immutableCollections()
+                .createStub(Map.class, String.class, Integer.class);
+        assertTrue(empty.isEmpty());
+
+        CollectionsPojo collections = StubFactory.builder().immutableCollections().createStub(CollectionsPojo.class);
+        collections.getArrayList().add("modifiable");
+        collections.getDeque().add(1L);
+    }
+
+    private static void assertUnmodifiable(java.util.Collection<?> collection) {
+        try {
+            collection.clear();
+            fail("The collection should not be modifiable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package org.oss.jstub;
+
+import org.junit.Test;
+import org.oss.jstub.pojo.FullPojo;
+import org.oss.jstub.pojo.RecursivePojo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertSame;
+import static org.oss.jstub.TestUtil.assertAllFieldsNotNull;
+
+public class StubFactoryConcurrencyTest {
+    private static final int THREADS = 8;
+    private static final int STUBS_PER_THREAD = 2_000;
+
+    @Test
+    public void testSharedFactoryFromManyThreads() throws Exception {
+        StubFactory stubFactory = StubFactory.get();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit((Callable<Void>) () -> {
+                    start.await();
+                    for (int j = 0; j < STUBS_PER_THREAD; j++) {
+                        RecursivePojo recursivePojo = stubFactory.createStub(RecursivePojo.class);
+                        assertSame(recursivePojo, recursivePojo.getSelf());
+                        assertAllFieldsNotNull(stubFactory.createStub(FullPojo.class));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testParallelCollection() {
+        int count = 1_001;
+        List<FullPojo> pojos = StubFactory.get().createStubCollection(count, ArrayList::new,
+                ForkJoinPool.commonPool(), FullPojo.class);
+        assertEquals(count, pojos.size());
+        pojos.forEach(TestUtil::assertAllFieldsNotNull);
+    }
+
+    @Test
+    public void testParallelConsumer() {
+        int count = 1_001;
+        Queue<RecursivePojo> pojos = new ConcurrentLinkedQueue<>();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            StubFactory.get().createStubs(count, executor, pojos::add, RecursivePojo.class);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(count, pojos.size());
+        pojos.forEach(pojo -> assertSame(pojo, pojo.getSelf()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParallelFailureIsRethrown() {
+        StubFactory.builder()
+                .addCustomSupplier("setName", () -> {
+                    throw new IllegalArgumentException("no name");
+                })
+                .build()
+                .createStubCollection(100, ArrayList::new, ForkJoinPool.commonPool(),
+                        RecursivePojo.class);
+    }
+
+    @Test
+    public void testStream() {
+        StubFactory stubFactory = StubFactory.get();
+        assertEquals(10, stubFactory.stream(FullPojo.class).limit(10)
+                .peek(TestUtil::assertAllFieldsNotNull)
+                .count());
+        assertTrue(stubFactory.stream(RecursivePojo.class)
+                .anyMatch(pojo -> pojo.getName().startsWith("a")));
+    }
+
+    @Test
+    public void testParallelStream() {
+        int count = 1_001;
+        List<RecursivePojo> pojos = StubFactory.get().stream(RecursivePojo.class)
+                .parallel()
+                .limit(count)
+                .collect(Collectors.toList());
+        assertEquals(count, pojos.size());
+        pojos.forEach(pojo -> assertSame(pojo, pojo.getSelf()));
+    }
+
+    @Test
+    public void testSeedGivesSameStubsWhateverTheThreads() {
+        StubFactory stubFactory = StubFactory.builder().seed(42).build();
+        int count = 101;
+        List<List<Object>> expected = stubFactory.createStubCollection(count, ArrayList::new, FullPojo.class)
+                .stream().map(StubFactoryConcurrencyTest::fingerprint).collect(Collectors.toList());
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            List<FullPojo> pojos = stubFactory.createStubCollection(count, ArrayList::new,
+                    executor, FullPojo.class);
+            assertEquals(expected, pojos.stream().map(StubFactoryConcurrencyTest::fingerprint)
+                    .collect(Collectors.toList()));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(expected, stubFactory.stream(FullPojo.class).parallel().limit(count)
+                .map(StubFactoryConcurrencyTest::fingerprint).collect(Collectors.toList()));
+        assertEquals(expected.get(0), fingerprint(stubFactory.createStub(FullPojo.class)));
+    }
+
+    private static List<Object> fingerprint(FullPojo pojo) {
+        return Arrays.asList(pojo.getString(), pojo.getAnInt(), pojo.getaByte(), pojo.getaChar(),
+                pojo.getaDouble(), pojo.getaLong(), pojo.getaFloat(), pojo.getDate(),
+                pojo.getBigInteger(), pojo.getBigDecimal(), pojo.getTimestamp(), pojo.getBasicEnum(),
+                pojo.getSimplePojo().getName(), pojo.getStringList(), pojo.getDateSet(),
+                Arrays.toString(pojo.getIntArray()), pojo.getMap(), Arrays.toString(pojo.getEnumArray()));
+    }
+}
@@ -0,0 +1,80 @@
+package org.oss.jstub;
+
+import org.junit.Test;
+import org.oss.jstub.pojo.FullPojo;
+import org.oss.jstub.pojo.ImmutablePojo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class StubFactoryFieldsTest {
+
+    @Test
+    public void testFinalAndInheritedFields() {
+        for (StubFactory.Engine engine : StubFactory.Engine.values()) {
+            ImmutablePojo pojo = StubFactory.builder()
+                    .engine(engine)
+                    .population(StubFactory.Population.FIELDS)
+                    .createStub(ImmutablePojo.class);
+            assertNotNull(pojo.getId());
+            assertNotEquals(0, pojo.getaLong());
+            assertEquals(StubFactory.DEFAULT_COLLECTION_SIZE, pojo.getTags().size());
+            assertNotNull(pojo.getTags().get(0));
+            assertNotNull(pojo.getSimplePojo().getName());
+            assertNotNull(pojo.getName());
+            assertEquals(0, pojo.getHash());
+            assertEquals("immutable", ImmutablePojo.getPrefix());
+        }
+    }
+
+    @Test
+    public void testCustomValuesByFieldName() {
+        for (StubFactory.Engine engine : StubFactory.Engine.values()) {
+            ImmutablePojo pojo = StubFactory.builder()
+                    .engine(engine)
+                    .population(StubFactory.Population.FIELDS)
+                    .addCustomValue("setId", "id")
+                    .addCustomValue("setaLong", 7L)
+                    .addIgnoredSetter("setName")
+                    .createStub(ImmutablePojo.class);
+            assertEquals("id", pojo.getId());
+            assertEquals(7L, pojo.getaLong());
+            assertNull(pojo.getName());
+        }
+    }
+
+    @Test
+    public void testSamePropertiesAsSetters() {
+        // the slots are not in the order of the setters, so the values differ
+        FullPojo bySetters = StubFactory.builder().seed(5).createStub(FullPojo.class);
+        FullPojo byFields = StubFactory.builder().seed(5)
+                .population(StubFactory.Population.FIELDS)
+                .createStub(FullPojo.class);
+        assertNotNull(byFields.getString());
+        assertNotNull(byFields.getDate());
+        assertNotNull(byFields.getSimplePojo());
+        assertEquals(bySetters.getStringList().size(), byFields.getStringList().size());
+        assertEquals(bySetters.getMap().size(), byFields.getMap().size());
+    }
+
+    @Test
+    public void testSeededValuesWhateverTheEngine() {
+        FullPojo reflective = StubFactory.builder().seed(5)
+                .population(StubFactory.Population.FIELDS)
+                .createStub(FullPojo.class);
+        FullPojo compiled = StubFactory.builder().seed(5)
+                .population(StubFactory.Population.FIELDS)
+                .engine(StubFactory.Engine.COMPILED)
+                .createStub(FullPojo.class);
+        assertEquals(reflective.getString(), compiled.getString());
+        assertEquals(reflective.getAnInt(), compiled.getAnInt());
+        assertEquals(reflective.getDate(), compiled.getDate());
+        assertEquals(reflective.getStringList(), compiled.getStringList());
+        assertEquals(reflective.getMap(), compiled.getMap());
+        assertEquals(reflective.getSimplePojo().getName(), compiled.getSimplePojo().getName());
+        assertArrayEquals(reflective.getIntArray(), compiled.getIntArray());
+    }
+}
@@ -0,0 +1,68 @@
+package org.oss.jstub;
+
+import org.junit.Test;
+import org.oss.jstub.pojo.GenericPojo;
+import org.oss.jstub.pojo.StringBox;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StubFactoryGenericsTest {
+
+    @Test
+    public void testNestedWildcardAndArrayGenerics() {
+        for (StubFactory.Engine engine : StubFactory.Engine.values()) {
+            GenericPojo pojo = StubFactory.builder().engine(engine).createStub(GenericPojo.class);
+            assertEquals(StubFactory.DEFAULT_COLLECTION_SIZE, pojo.getNested().size());
+            for (Map.Entry<String, List<Long>> entry : pojo.getNested().entrySet()) {
+                assertEquals(StubFactory.DEFAULT_COLLECTION_SIZE, entry.getValue().size());
+                for (Object value : entry.getValue()) {
+                    assertTrue(value instanceof Long);
+                }
+            }
+            for (Object value : pojo.getWildcards()) {
+                assertTrue(value instanceof Integer);
+            }
+            assertEquals(StubFactory.DEFAULT_COLLECTION_SIZE, pojo.getLists().length);
+            for (List<String> list : pojo.getLists()) {
+                assertEquals(StubFactory.DEFAULT_COLLECTION_SIZE, list.size());
+                for (Object value : list) {
+                    assertTrue(value instanceof String);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTypeVariablesBoundBySuperclass() {
+        for (StubFactory.Engine engine : StubFactory.Engine.values()) {
+            StringBox box = StubFactory.builder().engine(engine).createStub(StringBox.class);
+            assertTrue(((Object) box.getValue()) instanceof String);
+            assertEquals(StubFactory.DEFAULT_COLLECTION_SIZE, box.getValues().size());
+            for (Object value : box.getValues()) {
+                assertTrue(value instanceof String);
+            }
+        }
+    }
+
+    @Test
+    public void testResolvedTypeOfSlot() {
+        StubPlan.Slot nested = StubPlan.of(GenericPojo.class).getSlots().stream()
+                .filter(slot -> slot.getPropertyName().equals("nested"))
+                .findFirst().get();
+        assertEquals("java.util.Map<java.lang.String,java.util.List<java.lang.Long>>",
+                nested.getResolvedType().toString());
+    }
+
+    @Test
+    public void testWriteNestedGenerics() throws IOException {
+        StringWriter writer = new StringWriter();
+        StubFactory.get().writeStubs(1, StubFactory.Format.JSON_LINES, writer, GenericPojo.class);
+        assertTrue(writer.toString(), writer.toString().matches("(?s).*\"nested\":\\{\"\\w+\":\\[-?\\d+,.*"));
+    }
+}
@@ -0,0 +1,67 @@
+package org.oss.jstub;
+
+import org.junit.Test;
+import org.oss.jstub.pojo.BuiltPojo;
+import org.oss.jstub.pojo.LinkedPojo;
+import org.oss.jstub.pojo.ValuePojo;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StubFactoryInstantiationTest {
+
+    @Test
+    public void testStaticFactoryBeforeCopyConstructor() {
+        for (StubFactory.Engine engine : StubFactory.Engine.values()) {
+            ValuePojo pojo = StubFactory.builder().engine(engine).createStub(ValuePojo.class);
+            assertNotNull(pojo.getName());
+            assertEquals(StubFactory.DEFAULT_COLLECTION_SIZE, pojo.getIds().size());
+            for (Object id : pojo.getIds()) {
+                assertTrue(id instanceof Long);
+            }
+        }
+        Instantiator instantiator = StubPlan.of(ValuePojo.class).getInstantiator();
+        assertEquals(Instantiator.Kind.FACTORY_METHOD, instantiator.getKind());
+    }
+
+    @Test
+    public void testBuilder() {
+        for (StubFactory.Engine engine : StubFactory.Engine.values()) {
+            BuiltPojo pojo = StubFactory.builder().engine(engine).createStub(BuiltPojo.class);
+            assertNotNull(pojo.getName());
+            assertEquals(StubFactory.DEFAULT_COLLECTION_SIZE, pojo.getCounts().size());
+            for (Map.Entry<?, ?> entry : pojo.getCounts().entrySet()) {
+                assertTrue(entry.getKey() instanceof String);
+                assertTrue(entry.getValue() instanceof Integer);
+            }
+        }
+        assertEquals(Instantiator.Kind.BUILDER, StubPlan.of(BuiltPojo.class).getInstantiator().getKind());
+    }
+
+    @Test
+    public void testInstantiatorIsRemembered() {
+        StubFactory.get().createStub(LinkedPojo.class);
+        StubPlan<LinkedPojo> plan = StubPlan.of(LinkedPojo.class);
+        Instantiator instantiator = plan.getInstantiator();
+        assertEquals(Instantiator.Kind.CONSTRUCTOR, instantiator.getKind());
+        List<LinkedPojo> pojos = StubFactory.get().createStub(List.class, LinkedPojo.class);
+        assertEquals(StubFactory.DEFAULT_COLLECTION_SIZE, pojos.size());
+        assertSame(instantiator, plan.getInstantiator());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoInstantiator() {
+        StubFactory.get().createStub(RefusingPojo.class);
+    }
+
+    public static class RefusingPojo {
+        public RefusingPojo(String name) {
+            throw new UnsupportedOperationException(name);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.oss.jstub;
+
+import org.junit.Test;
+import org.oss.jstub.pojo.FullPojo;
+import org.oss.jstub.pojo.LinkedPojo;
+import org.oss.jstub.pojo.RecursivePojo;
+import org.oss.jstub.pojo.SimplePojo;
+
+import java.lang.reflect.Field;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StubFactoryLazyBeansTest {
+
+    @Test
+    public void testPropertiesGeneratedOnFirstGet() throws Exception {
+        for (StubFactory.Engine engine : StubFactory.Engine.values()) {
+            FullPojo stub = StubFactory.builder().engine(engine).lazyBeans().createStub(FullPojo.class);
+            assertNotEquals(FullPojo.class, stub.getClass());
+            assertNull(field(stub, "string"));
+            assertNull(field(stub, "simplePojo"));
+
+            String string = stub.getString();
+            assertNotNull(string);
+            assertSame(string, stub.getString());
+            assertNull(field(stub, "simplePojo"));
+
+            SimplePojo simplePojo = stub.getSimplePojo();
+            assertNull(field(simplePojo, "name"));
+            assertNotNull(simplePojo.getName());
+            assertEquals(StubFactory.DEFAULT_COLLECTION_SIZE, stub.getStringList().size());
+            assertEquals(StubFactory.DEFAULT_COLLECTION_SIZE, stub.getIntArray().length);
+        }
+    }
+
+    @Test
+    public void testValuesDoNotDependOnTheOrderOfTheGetters() {
+        FullPojo first = StubFactory.builder().seed(3).lazyBeans().createStub(FullPojo.class);
+        FullPojo second = StubFactory.builder().seed(3).lazyBeans().createStub(FullPojo.class);
+        second.getMap();
+        second.getSimplePojo().getAnInt();
+        second.getaLong();
+
+        assertEquals(first.getaLong(), second.getaLong());
+        assertEquals(first.getString(), second.getString());
+        assertEquals(first.getMap(), second.getMap());
+        assertEquals(first.getSimplePojo().getName(), second.getSimplePojo().getName());
+        assertEquals(first.getSimplePojo().getAnInt(), second.getSimplePojo().getAnInt());
+    }
+
+    @Test
+    public void testSetterBeforeGetter() {
+        SimplePojo stub = StubFactory.builder().lazyBeans().createStub(SimplePojo.class);
+        stub.setName("name");
+        assertEquals("name", stub.getName());
+    }
+
+    @Test
+    public void testCustomValues() {
+        SimplePojo stub = StubFactory.builder()
+                .lazyBeans()
+                .addCustomValue("setName", "custom")
+                .createStub(SimplePojo.class);
+        assertEquals("custom", stub.getName());
+    }
+
+    @Test
+    public void testRecursion() {
+        RecursivePojo stub = StubFactory.builder().lazyBeans().createStub(RecursivePojo.class);
+        assertSame(stub, stub.getSelf());
+        assertNotNull(stub.getName());
+    }
+
+    @Test
+    public void testBeansWithoutDefaultConstructorAreNotLazy() {
+        LinkedPojo stub = StubFactory.builder().lazyBeans().createStub(LinkedPojo.class);
+        assertEquals(LinkedPojo.class, stub.getClass());
+        assertNotNull(stub.getName());
+    }
+
+    @Test
+    public void testFields() throws Exception {
+        SimplePojo stub = StubFactory.builder()
+                .population(StubFactory.Population.FIELDS)
+                .lazyBeans()
+                .createStub(SimplePojo.class);
+        assertNull(field(stub, "name"));
+        assertNotNull(stub.getName());
+        assertTrue(stub instanceof SimplePojo);
+    }
+
+    private static Object field(Object object, String name) throws ReflectiveOperationException {
+        Field field = object.getClass().getSuperclass().getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(object);
+    }
+}
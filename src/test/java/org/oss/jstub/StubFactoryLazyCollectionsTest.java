@@ -0,0 +1,66 @@
+package org.oss.jstub;
+
+import org.junit.Test;
+import org.oss.jstub.pojo.GenericPojo;
+import org.oss.jstub.pojo.SimplePojo;
+import org.oss.jstub.pojo.StringBox;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StubFactoryLazyCollectionsTest {
+
+    @Test
+    public void testBigLazyList() {
+        StringBox box = StubFactory.builder(1_000_000).lazyCollections().createStub(StringBox.class);
+        List<String> values = box.getValues();
+        assertEquals(1_000_000, values.size());
+        String last = values.get(999_999);
+        assertEquals(5, last.length());
+        assertSame(last, values.get(999_999));
+        values.set(0, null);
+        assertNull(values.get(0));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testFixedSize() {
+        StubFactory.builder().lazyCollections().createStub(List.class, String.class).add("a");
+    }
+
+    @Test
+    public void testElementsDependOnlyOnTheirIndex() {
+        List<SimplePojo> forward = StubFactory.builder().seed(11).lazyCollections()
+                .createStub(List.class, SimplePojo.class);
+        List<SimplePojo> backward = StubFactory.builder().seed(11).lazyCollections()
+                .createStub(List.class, SimplePojo.class);
+        for (int i = backward.size() - 1; i >= 0; i--) {
+            backward.get(i);
+        }
+        for (int i = 0; i < forward.size(); i++) {
+            assertEquals(forward.get(i).getName(), backward.get(i).getName());
+            assertEquals(forward.get(i).getAnInt(), backward.get(i).getAnInt());
+        }
+    }
+
+    @Test
+    public void testLazyMaps() {
+        for (StubFactory.Engine engine : StubFactory.Engine.values()) {
+            GenericPojo pojo = StubFactory.builder().engine(engine).lazyCollections().createStub(GenericPojo.class);
+            Map<String, List<Long>> nested = pojo.getNested();
+            assertEquals(StubFactory.DEFAULT_COLLECTION_SIZE, nested.size());
+            for (String key : nested.keySet()) {
+                assertTrue(nested.containsKey(key));
+                List<Long> values = nested.get(key);
+                assertEquals(StubFactory.DEFAULT_COLLECTION_SIZE, values.size());
+                assertTrue(((Object) values.get(1)) instanceof Long);
+                assertSame(values, nested.get(key));
+            }
+            assertEquals(nested.keySet().size(), nested.entrySet().size());
+        }
+    }
+}
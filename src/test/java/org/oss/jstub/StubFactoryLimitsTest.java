@@ -0,0 +1,78 @@
+package org.oss.jstub;
+
+import org.junit.Test;
+import org.oss.jstub.pojo.FullPojo;
+import org.oss.jstub.pojo.LinkedPojo;
+import org.oss.jstub.pojo.PairPojo;
+import org.oss.jstub.pojo.TreePojo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class StubFactoryLimitsTest {
+
+    @Test
+    public void testCycleThroughCollection() {
+        for (StubFactory.Engine engine : StubFactory.Engine.values()) {
+            TreePojo tree = StubFactory.builder().engine(engine).createStub(TreePojo.class);
+            assertEquals(StubFactory.DEFAULT_COLLECTION_SIZE, tree.getChildren().size());
+            for (TreePojo child : tree.getChildren()) {
+                assertSame(tree, child);
+            }
+        }
+    }
+
+    @Test
+    public void testCycleThroughConstructor() {
+        LinkedPojo linkedPojo = StubFactory.get().createStub(LinkedPojo.class);
+        assertNotNull(linkedPojo.getName());
+        assertNull(linkedPojo.getNext());
+    }
+
+    @Test
+    public void testMaxDepth() {
+        StubFactory stubFactory = StubFactory.builder().maxDepth(1).build();
+        PairPojo pair = stubFactory.createStub(PairPojo.class);
+        assertNull(pair.getFirst());
+        assertNull(pair.getSecond());
+        FullPojo fullPojo = stubFactory.createStub(FullPojo.class);
+        assertNotNull(fullPojo.getString());
+        assertNull(fullPojo.getSimplePojo());
+    }
+
+    @Test
+    public void testMaxObjects() {
+        for (StubFactory.Engine engine : StubFactory.Engine.values()) {
+            PairPojo pair = StubFactory.builder()
+                    .engine(engine)
+                    .sharing(StubFactory.Sharing.FRESH)
+                    .maxObjects(2)
+                    .createStub(PairPojo.class);
+            // the pair and one of its properties, whichever setter comes first
+            assertEquals(1, (pair.getFirst() == null ? 0 : 1) + (pair.getSecond() == null ? 0 : 1));
+        }
+    }
+
+    @Test
+    public void testMaxObjectsReuse() {
+        PairPojo pair = StubFactory.builder()
+                .sharing(StubFactory.Sharing.FRESH)
+                .maxObjects(2)
+                .limit(StubFactory.Limit.REUSE)
+                .createStub(PairPojo.class);
+        assertNotNull(pair.getFirst());
+        assertSame(pair.getFirst(), pair.getSecond());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxDepth() {
+        StubFactory.builder().maxDepth(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxObjects() {
+        StubFactory.builder().maxObjects(0);
+    }
+}
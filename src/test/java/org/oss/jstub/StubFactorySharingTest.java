@@ -0,0 +1,90 @@
+package org.oss.jstub;
+
+import org.junit.Test;
+import org.oss.jstub.pojo.PairPojo;
+import org.oss.jstub.pojo.RecursivePojo;
+import org.oss.jstub.pojo.SimplePojo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class StubFactorySharingTest {
+
+    @Test
+    public void testPerClass() {
+        PairPojo pair = StubFactory.get().createStub(PairPojo.class);
+        assertSame(pair.getFirst(), pair.getSecond());
+        RecursivePojo recursivePojo = StubFactory.get().createStub(RecursivePojo.class);
+        assertSame(recursivePojo, recursivePojo.getSelf());
+    }
+
+    @Test
+    public void testFresh() {
+        for (StubFactory.Engine engine : StubFactory.Engine.values()) {
+            StubFactory stubFactory = StubFactory.builder()
+                    .sharing(StubFactory.Sharing.FRESH)
+                    .engine(engine)
+                    .build();
+            PairPojo pair = stubFactory.createStub(PairPojo.class);
+            assertNotSame(pair.getFirst(), pair.getSecond());
+            RecursivePojo recursivePojo = stubFactory.createStub(RecursivePojo.class);
+            assertSame(recursivePojo, recursivePojo.getSelf());
+        }
+    }
+
+    @Test
+    public void testPooled() {
+        List<PairPojo> pairs = StubFactory.builder()
+                .sharing(StubFactory.Sharing.POOLED)
+                .poolSize(2)
+                .createStubCollection(10, ArrayList::new, PairPojo.class);
+        Set<SimplePojo> simplePojos = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (PairPojo pair : pairs) {
+            simplePojos.add(pair.getFirst());
+            simplePojos.add(pair.getSecond());
+        }
+        assertEquals(10, pairs.size());
+        assertEquals(2, simplePojos.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyPool() {
+        StubFactory.builder().poolSize(0);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testInternImmutables() {
+        List<String> strings = StubFactory.builder(2000)
+                .addTypeGenerator(TypeGenerator.of(String.class, random -> "value" + random.nextInt(10)))
+                .internImmutables()
+                .createStub(List.class, String.class);
+        Set<String> identities = Collections.newSetFromMap(new IdentityHashMap<>());
+        identities.addAll(strings);
+        assertEquals(new HashSet<>(strings).size(), identities.size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testStreamsInternPerStub() {
+        List<List<String>> lists = StubFactory.builder()
+                .addTypeGenerator(TypeGenerator.of(String.class, random -> "value" + random.nextInt(1)))
+                .internImmutables()
+                .build()
+                .stream(List.class, String.class)
+                .limit(2)
+                .map(list -> (List<String>) list)
+                .collect(Collectors.toList());
+        assertSame(lists.get(0).get(0), lists.get(0).get(1));
+        assertNotSame(lists.get(0).get(0), lists.get(1).get(0));
+    }
+}
@@ -0,0 +1,176 @@
+package org.oss.jstub;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.oss.jstub.pojo.BasicInterface;
+import org.oss.jstub.pojo.CollectionsPojo;
+import org.oss.jstub.pojo.FullPojo;
+import org.oss.jstub.pojo.LinkedPojo;
+import org.oss.jstub.pojo.PairPojo;
+import org.oss.jstub.pojo.RecursivePojo;
+import org.oss.jstub.pojo.SimplePojo;
+import org.oss.jstub.pojo.TreePojo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class StubFactorySnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFullPojo() throws IOException {
+        Path file = folder.newFile().toPath();
+        List<FullPojo> stubs = StubFactory.builder().seed(3).build()
+                .createStubCollection(100, ArrayList::new, FullPojo.class);
+        StubFactory.writeSnapshot(file, stubs, FullPojo.class);
+        List<FullPojo> snapshot = StubFactory.readSnapshot(file, FullPojo.class);
+        assertEquals(stubs.size(), snapshot.size());
+        for (int i = stubs.size() - 1; i >= 0; i--) {
+            FullPojo expected = stubs.get(i);
+            FullPojo actual = snapshot.get(i);
+            assertEquals(expected.getString(), actual.getString());
+            assertEquals(expected.getAnInt(), actual.getAnInt());
+            assertEquals(expected.getaChar(), actual.getaChar());
+            assertEquals(expected.getaDouble(), actual.getaDouble(), 0);
+            assertEquals(expected.getDate(), actual.getDate());
+            assertEquals(expected.getBigDecimal(), actual.getBigDecimal());
+            assertEquals(expected.getTimestamp(), actual.getTimestamp());
+            assertEquals(expected.getCalendar().getTimeInMillis(), actual.getCalendar().getTimeInMillis());
+            assertEquals(expected.getXmlGregorianCalendar(), actual.getXmlGregorianCalendar());
+            assertEquals(expected.getBasicEnum(), actual.getBasicEnum());
+            assertEquals(expected.getSimplePojo().getName(), actual.getSimplePojo().getName());
+            assertEquals(expected.getStringList(), actual.getStringList());
+            assertEquals(expected.getDateSet(), actual.getDateSet());
+            assertArrayEquals(expected.getIntArray(), actual.getIntArray());
+            assertArrayEquals(expected.getEnumArray(), actual.getEnumArray());
+            assertEquals(expected.getMap(), actual.getMap());
+            assertEquals(expected.getSimplePojos().size(), actual.getSimplePojos().size());
+            assertNull(actual.getBasicInterface());
+            assertSame(actual, snapshot.get(i));
+        }
+    }
+
+    @Test
+    public void testSharedObjects() throws IOException {
+        Path file = folder.newFile().toPath();
+        StubFactory.writeSnapshot(file, StubFactory.get().createStubCollection(5, ArrayList::new,
+                PairPojo.class), PairPojo.class);
+        for (PairPojo pair : StubFactory.readSnapshot(file, PairPojo.class)) {
+            assertSame(pair.getFirst(), pair.getSecond());
+        }
+        // the files read are still mapped, so they are not written again
+        file = folder.newFile().toPath();
+        StubFactory.writeSnapshot(file, Collections.singletonList(StubFactory.get()
+                .createStub(RecursivePojo.class)), RecursivePojo.class);
+        RecursivePojo recursivePojo = StubFactory.readSnapshot(file, RecursivePojo.class).get(0);
+        assertSame(recursivePojo, recursivePojo.getSelf());
+        file = folder.newFile().toPath();
+        StubFactory.writeSnapshot(file, Collections.singletonList(StubFactory.get()
+                .createStub(TreePojo.class)), TreePojo.class);
+        TreePojo tree = StubFactory.readSnapshot(file, TreePojo.class).get(0);
+        assertEquals(StubFactory.DEFAULT_COLLECTION_SIZE, tree.getChildren().size());
+        for (TreePojo child : tree.getChildren()) {
+            assertSame(tree, child);
+        }
+    }
+
+    @Test
+    public void testCollectionClasses() throws IOException {
+        Path file = folder.newFile().toPath();
+        List<CollectionsPojo> stubs = StubFactory.builder().seed(3).build()
+                .createStubCollection(10, ArrayList::new, CollectionsPojo.class);
+        StubFactory.writeSnapshot(file, stubs, CollectionsPojo.class);
+        List<CollectionsPojo> snapshot = StubFactory.readSnapshot(file, CollectionsPojo.class);
+        for (int i = 0; i < stubs.size(); i++) {
+            CollectionsPojo expected = stubs.get(i);
+            CollectionsPojo actual = snapshot.get(i);
+            assertEquals(expected.getTreeMap(), actual.getTreeMap());
+            assertEquals(expected.getLinkedList(), actual.getLinkedList());
+            assertEquals(expected.getEnumSet(), actual.getEnumSet());
+            assertEquals(expected.getEnumMap(), actual.getEnumMap());
+            assertEquals(expected.getConcurrentMap().keySet(), actual.getConcurrentMap().keySet());
+            assertEquals(new ArrayList<>(expected.getDeque()), new ArrayList<>(actual.getDeque()));
+            assertEquals(expected.getSortedSet(), actual.getSortedSet());
+            assertEquals(expected.getNavigableMap(), actual.getNavigableMap());
+            assertEquals(expected.getArrayList(), actual.getArrayList());
+            assertEquals(expected.getLinkedHashSet(), actual.getLinkedHashSet());
+            assertEquals(expected.getQueue().getClass(), actual.getQueue().getClass());
+            assertEquals(expected.getLinkedHashSet().getClass(), actual.getLinkedHashSet().getClass());
+        }
+    }
+
+    @Test
+    public void testImmutableCollections() throws IOException {
+        Path file = folder.newFile().toPath();
+        FullPojo stub = StubFactory.builder().immutableCollections().createStub(FullPojo.class);
+        StubFactory.writeSnapshot(file, Collections.singletonList(stub), FullPojo.class);
+        FullPojo actual = StubFactory.readSnapshot(file, FullPojo.class).get(0);
+        assertEquals(stub.getStringList(), actual.getStringList());
+        assertEquals(stub.getDateSet(), actual.getDateSet());
+        assertEquals(stub.getMap(), actual.getMap());
+    }
+
+    @Test
+    public void testGeneratedInterfaces() throws IOException {
+        Path file = folder.newFile().toPath();
+        StubFactory stubFactory = StubFactory.builder().generateInterfaces().build();
+        FullPojo stub = stubFactory.createStub(FullPojo.class);
+        StubFactory.writeSnapshot(file, Collections.singletonList(stub), FullPojo.class);
+        FullPojo actual = StubFactory.readSnapshot(file, FullPojo.class).get(0);
+        assertEquals(stub.getString(), actual.getString());
+        assertNull(actual.getBasicInterface());
+
+        file = folder.newFile().toPath();
+        StubFactory.writeSnapshot(file, Collections.singletonList(stubFactory.createStub(BasicInterface.class)),
+                BasicInterface.class);
+        assertEquals(Collections.singletonList(null), StubFactory.readSnapshot(file, BasicInterface.class));
+    }
+
+    @Test
+    public void testLazyBeans() throws IOException {
+        Path file = folder.newFile().toPath();
+        FullPojo stub = StubFactory.builder().lazyBeans().createStub(FullPojo.class);
+        StubFactory.writeSnapshot(file, Collections.singletonList(stub), FullPojo.class);
+        FullPojo actual = StubFactory.readSnapshot(file, FullPojo.class).get(0);
+        assertEquals(FullPojo.class, actual.getClass());
+        assertEquals(stub.getString(), actual.getString());
+        assertEquals(stub.getAnInt(), actual.getAnInt());
+        assertEquals(stub.getSimplePojo().getName(), actual.getSimplePojo().getName());
+        assertEquals(stub.getStringList(), actual.getStringList());
+    }
+
+    @Test
+    public void testBeansWithoutDefaultConstructor() throws IOException {
+        Path file = folder.newFile().toPath();
+        StubFactory.writeSnapshot(file, Arrays.asList(new LinkedPojo("a", null), null), LinkedPojo.class);
+        assertEquals(Arrays.asList(null, null), StubFactory.readSnapshot(file, LinkedPojo.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOtherClass() throws IOException {
+        Path file = folder.newFile().toPath();
+        StubFactory.writeSnapshot(file, StubFactory.get().createStubCollection(2, ArrayList::new,
+                SimplePojo.class), SimplePojo.class);
+        StubFactory.readSnapshot(file, FullPojo.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotASnapshot() throws IOException {
+        Path file = folder.newFile().toPath();
+        Files.write(file, "not a snapshot of stubs".getBytes());
+        StubFactory.readSnapshot(file, SimplePojo.class);
+    }
+}
@@ -1,13 +1,26 @@
 package org.oss.jstub;
 
 import org.junit.Test;
+import org.oss.jstub.pojo.BasicInterface;
+import org.oss.jstub.pojo.FullPojo;
+import org.oss.jstub.pojo.RecursivePojo;
 import org.oss.jstub.pojo.SimplePojo;
 
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.oss.jstub.StubFactory.Population.FIELDS;
+import static org.oss.jstub.StubFactory.Population.SETTERS;
 
 public class StubFactoryWithBuilderTest {
 
@@ -40,8 +53,201 @@ public class StubFactoryWithBuilderTest {
         assertEquals(getValue(), pojo.getName());
     }
 
+    @Test
+    public void testInterfaceUsesCustomValues() {
+        BasicInterface basicInterface = StubFactory.builder()
+                .addCustomValue("setName", "a")
+                .createStub(BasicInterface.class);
+        assertEquals("a", basicInterface.getSimplePojo().getName());
+    }
+
+    @Test
+    public void testMemoizedInterface() {
+        BasicInterface notMemoized = StubFactory.get().createStub(BasicInterface.class);
+        assertNotSame(notMemoized.getSimplePojo(), notMemoized.getSimplePojo());
+
+        BasicInterface memoized = StubFactory.builder()
+                .memoizeInterfaces()
+                .createStub(BasicInterface.class);
+        SimplePojo pojo = memoized.getSimplePojo();
+        assertSame(pojo, memoized.getSimplePojo());
+        assertSame(memoized.getString(), memoized.getString());
+        assertEquals(memoized.getInt(), memoized.getInt());
+        assertSame(pojo, memoized.getSimplePojo());
+    }
+
+    @Test
+    public void testBoundedMemoizedInterface() {
+        BasicInterface memoized = StubFactory.builder()
+                .memoizeInterfaces(1)
+                .createStub(BasicInterface.class);
+        SimplePojo pojo = memoized.getSimplePojo();
+        assertSame(pojo, memoized.getSimplePojo());
+        memoized.getString();
+        assertNotSame(pojo, memoized.getSimplePojo());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMemoizeNothing() {
+        StubFactory.builder().memoizeInterfaces(0);
+    }
+
+    @Test
+    public void testGeneratedInterface() {
+        BasicInterface basicInterface = StubFactory.builder()
+                .generateInterfaces()
+                .addCustomValue("setName", "a")
+                .createStub(BasicInterface.class);
+        assertFalse(Proxy.isProxyClass(basicInterface.getClass()));
+        assertEquals("a", basicInterface.getSimplePojo().getName());
+        assertSame(basicInterface.getSimplePojo(), basicInterface.getSimplePojo());
+        assertSame(basicInterface.getString(), basicInterface.getString());
+        assertTrue(basicInterface.getInt() != 0);
+        assertSame(basicInterface, basicInterface.getSelf());
+    }
+
+    @Test
+    public void testGeneratedInterfaceMethods() {
+        MethodsInterface methods = StubFactory.builder()
+                .generateInterfaces()
+                .createStub(MethodsInterface.class);
+        assertFalse(Proxy.isProxyClass(methods.getClass()));
+        methods.run("a");
+        assertTrue(methods.getLong() != 0);
+        assertEquals(methods.compute(1, 2L), methods.compute(3, 4L), 0);
+        assertEquals(StubFactory.DEFAULT_COLLECTION_SIZE, methods.getStrings().size());
+    }
+
+    @Test
+    public void testGeneratedInterfaceFallsBackToProxy() {
+        HiddenInterface hiddenInterface = StubFactory.builder()
+                .generateInterfaces()
+                .createStub(HiddenInterface.class);
+        assertTrue(Proxy.isProxyClass(hiddenInterface.getClass()));
+        assertTrue(hiddenInterface.getName() != null);
+    }
+
+    @Test
+    public void testSeed() {
+        SimplePojo pojo1 = StubFactory.builder().seed(7).createStub(SimplePojo.class);
+        SimplePojo pojo2 = StubFactory.builder().seed(7).createStub(SimplePojo.class);
+        assertEquals(pojo1.getName(), pojo2.getName());
+        assertEquals(pojo1.getAnInt(), pojo2.getAnInt());
+    }
+
+    @Test
+    public void testSeededCallsGetSuccessiveStubs() {
+        StubFactory stubFactory = StubFactory.builder().seed(7).build();
+        SimplePojo first = stubFactory.createStub(SimplePojo.class);
+        SimplePojo second = stubFactory.createStub(SimplePojo.class);
+        assertFalse(first.getName().equals(second.getName()) && first.getAnInt() == second.getAnInt());
+        List<SimplePojo> collection = StubFactory.builder().seed(7)
+                .createStubCollection(2, java.util.ArrayList::new, SimplePojo.class);
+        TestUtil.assertFieldsEquals(collection.get(0), first);
+        TestUtil.assertFieldsEquals(collection.get(1), second);
+    }
+
+    @Test
+    public void testSeededProxies() {
+        BasicInterface proxy = StubFactory.builder().seed(7).createStub(BasicInterface.class);
+        BasicInterface other = StubFactory.builder().seed(8).createStub(BasicInterface.class);
+        String first = proxy.getString();
+        assertFalse(first.equals(proxy.getString()) && first.equals(proxy.getString()));
+        assertFalse(first.equals(other.getString()));
+
+        BasicInterface same = StubFactory.builder().seed(7).createStub(BasicInterface.class);
+        assertEquals(first, same.getString());
+        assertEquals(proxy.getInt(), same.getInt());
+    }
+
+    @Test
+    public void testCompiledEngine() {
+        StubFactory stubFactory = StubFactory.builder()
+                .engine(StubFactory.Engine.COMPILED)
+                .addCustomValue("setString", "a", "b")
+                .addIgnoredSetter("setaLong")
+                .build();
+        FullPojo pojo = stubFactory.createStub(FullPojo.class);
+        assertTrue(Arrays.asList("a", "b").contains(pojo.getString()));
+        assertEquals(0, pojo.getaLong());
+        assertEquals(StubFactory.DEFAULT_COLLECTION_SIZE, pojo.getSimplePojos().size());
+        RecursivePojo recursivePojo = stubFactory.createStub(RecursivePojo.class);
+        assertSame(recursivePojo, recursivePojo.getSelf());
+    }
+
+    @Test
+    public void testCompiledEngineGeneratesLikeReflective() {
+        SimplePojo reflective = StubFactory.builder().seed(3)
+                .createStub(SimplePojo.class);
+        SimplePojo compiled = StubFactory.builder().seed(3).engine(StubFactory.Engine.COMPILED)
+                .createStub(SimplePojo.class);
+        TestUtil.assertFieldsEquals(reflective, compiled);
+    }
+
+    @Test
+    public void testCompiledFactoriesAreCollected() throws InterruptedException {
+        List<WeakReference<StubFactory>> references = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            StubFactory stubFactory = StubFactory.builder()
+                    .engine(StubFactory.Engine.COMPILED)
+                    .build();
+            stubFactory.createStub(FullPojo.class);
+            references.add(new WeakReference<>(stubFactory));
+        }
+        int reachable = references.size();
+        for (int i = 0; i < 20 && reachable > 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+            reachable = 0;
+            for (WeakReference<StubFactory> reference : references) {
+                reachable += reference.get() != null ? 1 : 0;
+            }
+        }
+        assertEquals(0, reachable);
+    }
+
+    @Test
+    public void testBuilderReusesFactoryUntilChanged() {
+        StubFactory.CustomValuesBuilder builder = StubFactory.builder().addCustomValue("setName", "a");
+        StubFactory stubFactory = builder.build();
+        assertSame(stubFactory, builder.build());
+        builder.addCustomValue("setName", "b");
+        assertNotSame(stubFactory, builder.build());
+        assertEquals("a", stubFactory.createStub(SimplePojo.class).getName());
+        assertEquals("b", builder.createStub(SimplePojo.class).getName());
+        assertSame(StubFactory.get(), StubFactory.get());
+    }
+
+    @Test
+    public void testPlansSharedBySameCustomSetters() {
+        Values first = new Values(Collections.singletonMap("setName", new Object[]{"a"}),
+                Collections.emptyMap(), Collections.emptySet(), TypeGenerators.DEFAULT);
+        Values second = new Values(Collections.singletonMap("setName", new Object[]{"b"}),
+                Collections.emptyMap(), Collections.emptySet(), TypeGenerators.DEFAULT);
+        Values ignored = new Values(Collections.emptyMap(), Collections.emptyMap(),
+                Collections.singleton("setName"), TypeGenerators.DEFAULT);
+        assertSame(StubPlan.cache(first, SETTERS), StubPlan.cache(second, SETTERS));
+        assertNotSame(StubPlan.cache(first, SETTERS), StubPlan.cache(ignored, SETTERS));
+        assertNotSame(StubPlan.cache(first, SETTERS), StubPlan.cache(new Values(), SETTERS));
+        assertNotSame(StubPlan.cache(first, SETTERS), StubPlan.cache(second, FIELDS));
+    }
+
     private String getValue() {
         return "I kent bă Liviu";
     }
 
+
+    interface HiddenInterface {
+        String getName();
+    }
+
+    public interface MethodsInterface {
+        long getLong();
+
+        double compute(int i, long l);
+
+        void run(String s);
+
+        List<String> getStrings();
+    }
 }
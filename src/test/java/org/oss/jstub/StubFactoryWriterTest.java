@@ -0,0 +1,146 @@
+package org.oss.jstub;
+
+import org.junit.Test;
+import org.oss.jstub.pojo.BasicEnum;
+import org.oss.jstub.pojo.FullPojo;
+import org.oss.jstub.pojo.RecursivePojo;
+import org.oss.jstub.pojo.SimplePojo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StubFactoryWriterTest {
+
+    @Test
+    public void testJsonLines() throws IOException {
+        StringWriter writer = new StringWriter();
+        StubFactory.builder()
+                .addCustomValue("setName", "a\"b")
+                .build()
+                .writeStubs(3, StubFactory.Format.JSON_LINES, writer, SimplePojo.class);
+        List<String> lines = lines(writer.toString());
+        assertEquals(3, lines.size());
+        for (String line : lines) {
+            assertTrue(line, line.startsWith("{") && line.endsWith("}"));
+            assertTrue(line, line.contains("\"name\":\"a\\\"b\""));
+            assertTrue(line, line.matches(".*\"anInt\":-?\\d+.*"));
+        }
+    }
+
+    @Test
+    public void testJsonLinesOfNestedBeans() throws IOException {
+        StringWriter writer = new StringWriter();
+        StubFactory.get().writeStubs(2, StubFactory.Format.JSON_LINES, writer, RecursivePojo.class);
+        for (String line : lines(writer.toString())) {
+            assertTrue(line, line.contains("\"self\":null"));
+        }
+        writer = new StringWriter();
+        StubFactory.get().writeStubs(1, StubFactory.Format.JSON_LINES, writer, FullPojo.class);
+        String line = lines(writer.toString()).get(0);
+        assertTrue(line, line.contains("\"simplePojo\":{\"name\":\"")
+                || line.contains("\"simplePojo\":{\"anInt\":"));
+        assertTrue(line, line.contains("\"intArray\":["));
+        assertTrue(line, line.contains("\"basicInterface\":null"));
+    }
+
+    @Test
+    public void testLazyBeans() throws IOException {
+        StringWriter lazy = new StringWriter();
+        StubFactory.builder().seed(4).lazyBeans().build()
+                .writeStubs(2, StubFactory.Format.JSON_LINES, lazy, FullPojo.class);
+        StringWriter eager = new StringWriter();
+        StubFactory.builder().seed(4).build()
+                .writeStubs(2, StubFactory.Format.JSON_LINES, eager, FullPojo.class);
+        assertEquals(eager.toString(), lazy.toString());
+        assertTrue(lazy.toString(), lazy.toString().contains("\"simplePojo\":{"));
+    }
+
+    @Test
+    public void testJsonMaps() throws IOException {
+        StringWriter writer = new StringWriter();
+        StubFactory.get().writeStubs(1, StubFactory.Format.JSON_LINES, writer, Map.class,
+                SimplePojo.class, String.class);
+        String line = lines(writer.toString()).get(0);
+        assertTrue(line, line.startsWith("[[{") && line.endsWith("\"]]"));
+        assertEquals(line, StubFactory.DEFAULT_COLLECTION_SIZE, line.split("\\],\\[").length);
+
+        writer = new StringWriter();
+        StubFactory.get(20).writeStubs(1, StubFactory.Format.JSON_LINES, writer, Map.class,
+                BasicEnum.class, String.class);
+        line = lines(writer.toString()).get(0);
+        Set<String> keys = new HashSet<>();
+        Matcher matcher = Pattern.compile("\"(\\w+)\":").matcher(line);
+        while (matcher.find()) {
+            assertTrue(line, keys.add(matcher.group(1)));
+        }
+        assertTrue(line, keys.size() <= BasicEnum.values().length);
+    }
+
+    @Test
+    public void testCsv() throws IOException {
+        StringWriter writer = new StringWriter();
+        StubFactory.builder()
+                .addCustomValue("setName", "a,\"b\"")
+                .build()
+                .writeStubs(3, StubFactory.Format.CSV, writer, SimplePojo.class);
+        List<String> lines = lines(writer.toString());
+        assertEquals(4, lines.size());
+        int nameColumn = Arrays.asList(lines.get(0).split(",")).indexOf("name");
+        assertTrue(lines.get(0), nameColumn >= 0 && lines.get(0).contains("anInt"));
+        for (String line : lines.subList(1, lines.size())) {
+            assertTrue(line, line.contains("\"a,\"\"b\"\"\""));
+        }
+    }
+
+    @Test
+    public void testCsvOfNestedBeans() throws IOException {
+        StringWriter writer = new StringWriter();
+        StubFactory.get().writeStubs(5, StubFactory.Format.CSV, writer, FullPojo.class);
+        List<String> lines = lines(writer.toString());
+        assertEquals(6, lines.size());
+        String header = lines.get(0);
+        assertTrue(header, header.contains("simplePojo.name"));
+        int columns = header.split(",").length;
+        for (String line : lines.subList(1, lines.size())) {
+            assertEquals(line, columns, line.split(",", -1).length);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCsvOfCollection() throws IOException {
+        StubFactory.get().writeStubs(1, StubFactory.Format.CSV, new StringWriter(), List.class, String.class);
+    }
+
+    @Test
+    public void testTargetsWriteTheSame() throws IOException {
+        StubFactory stubFactory = StubFactory.builder().seed(5).build();
+        StringWriter writer = new StringWriter();
+        stubFactory.writeStubs(1000, StubFactory.Format.JSON_LINES, writer, FullPojo.class);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        stubFactory.writeStubs(1000, StubFactory.Format.JSON_LINES, outputStream, FullPojo.class);
+        ByteArrayOutputStream channelStream = new ByteArrayOutputStream();
+        stubFactory.writeStubs(1000, StubFactory.Format.JSON_LINES, Channels.newChannel(channelStream),
+                FullPojo.class);
+        assertEquals(1000, lines(writer.toString()).size());
+        assertEquals(writer.toString(), new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(writer.toString(), new String(channelStream.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private static List<String> lines(String text) {
+        assertTrue(text.endsWith("\n"));
+        return Arrays.asList(text.split("\n"));
+    }
+}
@@ -0,0 +1,96 @@
+package org.oss.jstub;
+
+import org.junit.Test;
+import org.oss.jstub.pojo.FullPojo;
+import org.oss.jstub.pojo.Money;
+import org.oss.jstub.pojo.SimplePojo;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TypeGeneratorTest {
+
+    @Test
+    public void testBuilderGenerator() {
+        StubFactory stubFactory = StubFactory.builder()
+                .addTypeGenerator(TypeGenerator.of(UUID.class,
+                        random -> new UUID(random.nextLong(), random.nextLong())))
+                .build();
+        assertNotNull(stubFactory.createStub(UUID.class));
+        Map<?, ?> map = stubFactory.createStub(Map.class, UUID.class, UUID.class);
+        assertEquals(StubFactory.DEFAULT_COLLECTION_SIZE, map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            assertTrue(entry.getKey() instanceof UUID);
+            assertTrue(entry.getValue() instanceof UUID);
+        }
+    }
+
+    @Test
+    public void testReplacedBuiltInGenerator() {
+        for (StubFactory.Engine engine : StubFactory.Engine.values()) {
+            FullPojo pojo = StubFactory.builder()
+                    .engine(engine)
+                    .addTypeGenerator(TypeGenerator.of(String.class, random -> "fixed"))
+                    .createStub(FullPojo.class);
+            assertEquals("fixed", pojo.getString());
+            assertEquals("fixed", pojo.getSimplePojo().getName());
+        }
+    }
+
+    @Test
+    public void testReplacedPrimitiveGenerator() throws IOException {
+        for (StubFactory.Engine engine : StubFactory.Engine.values()) {
+            for (StubFactory.Population population : StubFactory.Population.values()) {
+                StubFactory stubFactory = StubFactory.builder()
+                        .engine(engine)
+                        .population(population)
+                        .addTypeGenerator(TypeGenerator.of(int.class, random -> 7))
+                        .addTypeGenerator(TypeGenerator.of(Integer.class, random -> 8))
+                        .build();
+                FullPojo pojo = stubFactory.createStub(FullPojo.class);
+                assertEquals(7, pojo.getAnInt());
+                assertEquals(7, pojo.getSimplePojo().getAnInt());
+                for (int value : pojo.getIntArray()) {
+                    assertEquals(7, value);
+                }
+                StringWriter json = new StringWriter();
+                stubFactory.writeStubs(1, StubFactory.Format.JSON_LINES, json, SimplePojo.class);
+                assertTrue(json.toString(), json.toString().contains("\"anInt\":7"));
+            }
+        }
+    }
+
+    @Test
+    public void testServiceLoaderGenerator() {
+        List<Money> amounts = StubFactory.get().createStub(List.class, Money.class);
+        assertEquals(StubFactory.DEFAULT_COLLECTION_SIZE, amounts.size());
+        for (Money money : amounts) {
+            assertEquals("EUR", money.getCurrency());
+            assertTrue(money.getCents() >= 0 && money.getCents() < 100_000);
+        }
+    }
+
+    @Test
+    public void testSharedRegistry() {
+        TypeGenerator<UUID> generator = TypeGenerator.of(UUID.class, random -> new UUID(random.nextLong(), 0));
+        TypeGenerators generators = TypeGenerators.DEFAULT.with(Collections.singletonList(generator));
+        assertSame(generators, TypeGenerators.DEFAULT.with(Collections.singletonList(generator)));
+        assertNotSame(generators, TypeGenerators.DEFAULT.with(Collections.singletonList(
+                TypeGenerator.of(UUID.class, random -> new UUID(0, random.nextLong())))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullType() {
+        TypeGenerator.of(null, random -> "a");
+    }
+}
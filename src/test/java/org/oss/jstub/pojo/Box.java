@@ -0,0 +1,24 @@
+package org.oss.jstub.pojo;
+
+import java.util.List;
+
+public class Box<T> {
+    private T value;
+    private List<T> values;
+
+    public T getValue() {
+        return value;
+    }
+
+    public void setValue(T value) {
+        this.value = value;
+    }
+
+    public List<T> getValues() {
+        return values;
+    }
+
+    public void setValues(List<T> values) {
+        this.values = values;
+    }
+}
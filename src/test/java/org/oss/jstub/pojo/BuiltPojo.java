@@ -0,0 +1,50 @@
+package org.oss.jstub.pojo;
+
+import java.util.Map;
+
+public final class BuiltPojo {
+    private final String name;
+    private final Map<String, Integer> counts;
+
+    private BuiltPojo(Builder builder) {
+        this.name = builder.name;
+        this.counts = builder.counts;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Map<String, Integer> getCounts() {
+        return counts;
+    }
+
+    public static final class Builder {
+        private String name;
+        private Map<String, Integer> counts;
+
+        private Builder() {
+        }
+
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        public Builder counts(Map<String, Integer> counts) {
+            this.counts = counts;
+            return this;
+        }
+
+        public BuiltPojo build() {
+            if (name == null) {
+                throw new IllegalStateException("name is required");
+            }
+            return new BuiltPojo(this);
+        }
+    }
+}
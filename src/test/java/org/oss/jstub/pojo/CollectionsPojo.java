@@ -0,0 +1,106 @@
+package org.oss.jstub.pojo;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class CollectionsPojo {
+    private TreeMap<String, Integer> treeMap;
+    private LinkedList<String> linkedList;
+    private EnumSet<BasicEnum> enumSet;
+    private EnumMap<BasicEnum, String> enumMap;
+    private ConcurrentHashMap<String, SimplePojo> concurrentMap;
+    private Deque<Long> deque;
+    private SortedSet<String> sortedSet;
+    private NavigableMap<Integer, String> navigableMap;
+    private Queue<String> queue;
+    private ArrayList<String> arrayList;
+    private LinkedHashSet<Integer> linkedHashSet;
+
+    public TreeMap<String, Integer> getTreeMap() {
+        return treeMap;
+    }
+
+    public void setTreeMap(TreeMap<String, Integer> treeMap) {
+        this.treeMap = treeMap;
+    }
+
+    public LinkedList<String> getLinkedList() {
+        return linkedList;
+    }
+
+    public void setLinkedList(LinkedList<String> linkedList) {
+        this.linkedList = linkedList;
+    }
+
+    public EnumSet<BasicEnum> getEnumSet() {
+        return enumSet;
+    }
+
+    public void setEnumSet(EnumSet<BasicEnum> enumSet) {
+        this.enumSet = enumSet;
+    }
+
+    public EnumMap<BasicEnum, String> getEnumMap() {
+        return enumMap;
+    }
+
+    public void setEnumMap(EnumMap<BasicEnum, String> enumMap) {
+        this.enumMap = enumMap;
+    }
+
+    public ConcurrentHashMap<String, SimplePojo> getConcurrentMap() {
+        return concurrentMap;
+    }
+
+    public void setConcurrentMap(ConcurrentHashMap<String, SimplePojo> concurrentMap) {
+        this.concurrentMap = concurrentMap;
+    }
+
+    public Deque<Long> getDeque() {
+        return deque;
+    }
+
+    public void setDeque(Deque<Long> deque) {
+        this.deque = deque;
+    }
+
+    public SortedSet<String> getSortedSet() {
+        return sortedSet;
+    }
+
+    public void setSortedSet(SortedSet<String> sortedSet) {
+        this.sortedSet = sortedSet;
+    }
+
+    public NavigableMap<Integer, String> getNavigableMap() {
+        return navigableMap;
+    }
+
+    public void setNavigableMap(NavigableMap<Integer, String> navigableMap) {
+        this.navigableMap = navigableMap;
+    }
+
+    public Queue<String> getQueue() {
+        return queue;
+    }
+
+    public void setQueue(Queue<String> queue) {
+        this.queue = queue;
+    }
+
+    public ArrayList<String> getArrayList() {
+        return arrayList;
+    }
+
+    public void setArrayList(ArrayList<String> arrayList) {
+        this.arrayList = arrayList;
+    }
+
+    public LinkedHashSet<Integer> getLinkedHashSet() {
+        return linkedHashSet;
+    }
+
+    public void setLinkedHashSet(LinkedHashSet<Integer> linkedHashSet) {
+        this.linkedHashSet = linkedHashSet;
+    }
+}
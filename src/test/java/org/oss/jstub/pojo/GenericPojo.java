@@ -0,0 +1,34 @@
+package org.oss.jstub.pojo;
+
+import java.util.List;
+import java.util.Map;
+
+public class GenericPojo {
+    private Map<String, List<Long>> nested;
+    private List<? super Integer> wildcards;
+    private List<String>[] lists;
+
+    public Map<String, List<Long>> getNested() {
+        return nested;
+    }
+
+    public void setNested(Map<String, List<Long>> nested) {
+        this.nested = nested;
+    }
+
+    public List<? super Integer> getWildcards() {
+        return wildcards;
+    }
+
+    public void setWildcards(List<? super Integer> wildcards) {
+        this.wildcards = wildcards;
+    }
+
+    public List<String>[] getLists() {
+        return lists;
+    }
+
+    public void setLists(List<String>[] lists) {
+        this.lists = lists;
+    }
+}
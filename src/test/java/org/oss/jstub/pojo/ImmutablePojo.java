@@ -0,0 +1,43 @@
+package org.oss.jstub.pojo;
+
+import java.util.List;
+
+public class ImmutablePojo extends SimplePojo {
+    private static final String PREFIX = "immutable";
+    private final String id;
+    private final long aLong;
+    private final List<String> tags;
+    final SimplePojo simplePojo;
+    private transient int hash;
+
+    private ImmutablePojo() {
+        this.id = null;
+        this.aLong = 0;
+        this.tags = null;
+        this.simplePojo = null;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getaLong() {
+        return aLong;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public SimplePojo getSimplePojo() {
+        return simplePojo;
+    }
+
+    public int getHash() {
+        return hash;
+    }
+
+    public static String getPrefix() {
+        return PREFIX;
+    }
+}
@@ -0,0 +1,19 @@
+package org.oss.jstub.pojo;
+
+public class LinkedPojo {
+    private final String name;
+    private final LinkedPojo next;
+
+    public LinkedPojo(String name, LinkedPojo next) {
+        this.name = name;
+        this.next = next;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public LinkedPojo getNext() {
+        return next;
+    }
+}
@@ -0,0 +1,19 @@
+package org.oss.jstub.pojo;
+
+public final class Money {
+    private final long cents;
+    private final String currency;
+
+    public Money(long cents, String currency) {
+        this.cents = cents;
+        this.currency = currency;
+    }
+
+    public long getCents() {
+        return cents;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+}
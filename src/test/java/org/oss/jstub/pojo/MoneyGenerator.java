@@ -0,0 +1,17 @@
+package org.oss.jstub.pojo;
+
+import org.oss.jstub.RandomGenerator;
+import org.oss.jstub.TypeGenerator;
+
+public class MoneyGenerator implements TypeGenerator<Money> {
+
+    @Override
+    public Class<Money> getType() {
+        return Money.class;
+    }
+
+    @Override
+    public Money generate(RandomGenerator random) {
+        return new Money(random.nextInt(100_000), "EUR");
+    }
+}
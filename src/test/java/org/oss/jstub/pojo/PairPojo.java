@@ -0,0 +1,22 @@
+package org.oss.jstub.pojo;
+
+public class PairPojo {
+    private SimplePojo first;
+    private SimplePojo second;
+
+    public SimplePojo getFirst() {
+        return first;
+    }
+
+    public void setFirst(SimplePojo first) {
+        this.first = first;
+    }
+
+    public SimplePojo getSecond() {
+        return second;
+    }
+
+    public void setSecond(SimplePojo second) {
+        this.second = second;
+    }
+}
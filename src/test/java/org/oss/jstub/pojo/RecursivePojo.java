@@ -0,0 +1,22 @@
+package org.oss.jstub.pojo;
+
+public class RecursivePojo {
+    private String name;
+    private RecursivePojo self;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public RecursivePojo getSelf() {
+        return self;
+    }
+
+    public void setSelf(RecursivePojo self) {
+        this.self = self;
+    }
+}
@@ -0,0 +1,4 @@
+package org.oss.jstub.pojo;
+
+public class StringBox extends Box<String> {
+}
@@ -0,0 +1,24 @@
+package org.oss.jstub.pojo;
+
+import java.util.List;
+
+public class TreePojo {
+    private String name;
+    private List<TreePojo> children;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public List<TreePojo> getChildren() {
+        return children;
+    }
+
+    public void setChildren(List<TreePojo> children) {
+        this.children = children;
+    }
+}
@@ -0,0 +1,29 @@
+package org.oss.jstub.pojo;
+
+import java.util.List;
+
+public final class ValuePojo {
+    private final String name;
+    private final List<Long> ids;
+
+    private ValuePojo(String name, List<Long> ids) {
+        this.name = name;
+        this.ids = ids;
+    }
+
+    public ValuePojo(ValuePojo other) {
+        this(other.name, other.ids);
+    }
+
+    public static ValuePojo of(String name, List<Long> ids) {
+        return new ValuePojo(name, ids);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<Long> getIds() {
+        return ids;
+    }
+}